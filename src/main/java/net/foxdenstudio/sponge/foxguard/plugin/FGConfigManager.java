@@ -45,6 +45,12 @@ public final class FGConfigManager {
     private boolean saveInWorldFolder;
     private boolean useConfigFolder;
     private int nameLengthLimit;
+    private int chunkCacheSize;
+    private int userCacheSize;
+    private boolean retainOfflineUsers;
+    private int permissionCacheTime;
+    private int blockFilterThreshold;
+    private boolean filterExplosionBlocks;
 
     private Map<Module, Boolean> modules = new EnumMap<>(Module.class);
 
@@ -98,6 +104,29 @@ public final class FGConfigManager {
         root.getNode("general", "nameLengthLimit").setComment("The length limit for object names. Use 0 or lower for no limit.\n" +
                 "Extremely long names can cause a variety of unfixable issues. You have been warned.")
                 .setValue(nameLengthLimit);
+        root.getNode("general", "blockFilterThreshold").setComment("The number of block changes in one event at which FoxGuard checks each change on its own. Use 0 or lower to disable.\n" +
+                "Below this number, or when disabled, an event is cancelled as a whole if any of its changes is denied.\n" +
+                "At or above it, only the denied changes are dropped, so things like large tree growth can partially go through.")
+                .setValue(blockFilterThreshold);
+        root.getNode("general", "filterExplosionBlocks").setComment("Whether FoxGuard checks every block an explosion would destroy, instead of only the explosion's origin. Default: false\n" +
+                "When enabled, blocks in places where explosions are denied are kept, even if the explosion itself started somewhere it is allowed.\n" +
+                "Explosions that start where they are denied are always cancelled entirely.")
+                .setValue(filterExplosionBlocks);
+        root.getNode("cache", "chunkCacheSize").setComment("The maximum number of chunk columns FoxGuard keeps region data for, per world. Use 0 or lower for no limit.\n" +
+                "Least recently used columns are dropped once the limit is reached. Data for a chunk is always dropped when the chunk unloads.\n" +
+                "Use /foxguard cache to see how well the current size performs.")
+                .setValue(chunkCacheSize);
+        root.getNode("cache", "userCacheSize").setComment("The maximum number of users each handler keeps cached permissions for. Use 0 or lower for no limit.\n" +
+                "The least recently active users are dropped first once the limit is reached. Users are also dropped from the cache when they disconnect,\n" +
+                "unless retainOfflineUsers is enabled.")
+                .setValue(userCacheSize);
+        root.getNode("cache", "retainOfflineUsers").setComment("Whether handlers keep the cached permissions of users that disconnect. Default: false\n" +
+                "They are kept as soft references, so the garbage collector can still reclaim them when memory runs low.\n" +
+                "This makes rejoining cheaper on servers where the same players come and go often.")
+                .setValue(retainOfflineUsers);
+        root.getNode("cache", "permissionCacheTime").setComment("How long, in milliseconds, group handlers remember which of their groups a user has permission for.\n" +
+                "Permission changes can take up to this long to apply. Use 0 or lower to check permissions on every event.")
+                .setValue(permissionCacheTime);
 
         for (Module m : Module.values()) {
             root.getNode("module", m.name).setValue(this.modules.get(m));
@@ -134,6 +163,12 @@ public final class FGConfigManager {
         saveWorldRegionsInWorldFolders = root.getNode("storage", "saveWorldRegionsInWorldFolders").getBoolean(true);
         useConfigFolder = root.getNode("storage", "useConfigFolder").getBoolean(false);
         nameLengthLimit = root.getNode("general", "nameLengthLimit").getInt(24);
+        blockFilterThreshold = root.getNode("general", "blockFilterThreshold").getInt(0);
+        filterExplosionBlocks = root.getNode("general", "filterExplosionBlocks").getBoolean(false);
+        chunkCacheSize = root.getNode("cache", "chunkCacheSize").getInt(0);
+        userCacheSize = root.getNode("cache", "userCacheSize").getInt(1000);
+        retainOfflineUsers = root.getNode("cache", "retainOfflineUsers").getBoolean(false);
+        permissionCacheTime = root.getNode("cache", "permissionCacheTime").getInt(5000);
         for (Module m : Module.values()) {
             this.modules.put(m, root.getNode("module", m.name).getBoolean(true));
         }
@@ -162,6 +197,30 @@ public final class FGConfigManager {
         return nameLengthLimit;
     }
 
+    public int getBlockFilterThreshold() {
+        return blockFilterThreshold;
+    }
+
+    public boolean filterExplosionBlocks() {
+        return filterExplosionBlocks;
+    }
+
+    public int getChunkCacheSize() {
+        return chunkCacheSize;
+    }
+
+    public int getUserCacheSize() {
+        return userCacheSize;
+    }
+
+    public boolean retainOfflineUsers() {
+        return retainOfflineUsers;
+    }
+
+    public int getPermissionCacheTime() {
+        return permissionCacheTime;
+    }
+
     public Map<Module, Boolean> getModules() {
         return this.modules;
     }
@@ -37,12 +37,14 @@ import net.foxdenstudio.sponge.foxguard.plugin.event.FoxGuardEvent;
 import net.foxdenstudio.sponge.foxguard.plugin.event.util.FGEventFactory;
 import net.foxdenstudio.sponge.foxguard.plugin.handler.GlobalHandler;
 import net.foxdenstudio.sponge.foxguard.plugin.handler.IHandler;
+import net.foxdenstudio.sponge.foxguard.plugin.object.FGObjectBase;
 import net.foxdenstudio.sponge.foxguard.plugin.object.IFGObject;
 import net.foxdenstudio.sponge.foxguard.plugin.object.ILinkable;
 import net.foxdenstudio.sponge.foxguard.plugin.region.GlobalRegion;
 import net.foxdenstudio.sponge.foxguard.plugin.region.IRegion;
 import net.foxdenstudio.sponge.foxguard.plugin.region.world.GlobalWorldRegion;
 import net.foxdenstudio.sponge.foxguard.plugin.region.world.IWorldRegion;
+import net.foxdenstudio.sponge.foxguard.plugin.util.ProtectionSnapshot;
 import net.foxdenstudio.sponge.foxguard.plugin.util.RegionCache;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.event.cause.Cause;
@@ -50,9 +52,11 @@ import org.spongepowered.api.util.GuavaCollectors;
 import org.spongepowered.api.util.Tristate;
 import org.spongepowered.api.world.World;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 public final class FGManager {
 
@@ -63,10 +67,16 @@ public final class FGManager {
     private final Map<World, Set<IWorldRegion>> worldRegions;
     private final Set<IRegion> regions;
     private final Set<IHandler> handlers;
+    private final Map<World, Map<String, IWorldRegion>> worldRegionNames;
+    private final Map<String, IRegion> regionNames;
+    private final Map<String, IHandler> handlerNames;
     private final GlobalRegion globalRegion;
     private final GlobalHandler globalHandler;
 
     private final RegionCache regionCache;
+    private volatile ProtectionSnapshot snapshot;
+    private boolean snapshotScheduled = false;
+    private volatile int epoch = 0;
 
     private FGManager() {
         instance = this;
@@ -79,13 +89,19 @@ public final class FGManager {
         });
         regions = new HashSet<>();
         handlers = new HashSet<>();
+        worldRegionNames = new HashMap<>();
+        regionNames = new HashMap<>();
+        handlerNames = new HashMap<>();
         globalRegion = new GlobalRegion();
         globalHandler = new GlobalHandler();
         regions.add(globalRegion);
+        regionNames.put(nameKey(globalRegion.getName()), globalRegion);
         handlers.add(globalHandler);
+        handlerNames.put(nameKey(globalHandler.getName()), globalHandler);
         globalRegion.addHandler(globalHandler);
 
-        this.regionCache = new RegionCache(regions, worldRegions);
+        this.regionCache = new RegionCache(regions, worldRegions, FGConfigManager.getInstance().getChunkCacheSize());
+        publishSnapshot();
     }
 
     public static synchronized void init() {
@@ -102,8 +118,9 @@ public final class FGManager {
 
     public boolean isRegionNameAvailable(String name) {
         if (getRegion(name) != null) return false;
-        for (World world : worldRegions.keySet()) {
-            if (getWorldRegion(world, name) != null) return false;
+        String key = nameKey(name);
+        for (Map<String, IWorldRegion> names : worldRegionNames.values()) {
+            if (names.containsKey(key)) return false;
         }
         return true;
     }
@@ -139,7 +156,8 @@ public final class FGManager {
             return false;
         region.setWorld(world);
         this.worldRegions.get(world).add(region);
-        this.regionCache.markDirty(region, RegionCache.DirtyType.ADDED);
+        this.worldRegionNames.computeIfAbsent(world, k -> new HashMap<>()).put(nameKey(region.getName()), region);
+        this.markDirty(region, RegionCache.DirtyType.ADDED);
         FGStorageManager.getInstance().addObject(region);
         Sponge.getGame().getEventManager().post(FGEventFactory.createFGUpdateObjectEvent(FoxGuardMain.getCause(), region));
         return true;
@@ -148,7 +166,8 @@ public final class FGManager {
     public boolean addRegion(IRegion region) {
         if (region == null || !isRegionNameAvailable(region.getName()) || !isNameValid(region.getName())) return false;
         this.regions.add(region);
-        this.regionCache.markDirty(region, RegionCache.DirtyType.ADDED);
+        this.regionNames.put(nameKey(region.getName()), region);
+        this.markDirty(region, RegionCache.DirtyType.ADDED);
         FGStorageManager.getInstance().addObject(region);
         Sponge.getGame().getEventManager().post(FGEventFactory.createFGUpdateObjectEvent(FoxGuardMain.getCause(), region));
         return true;
@@ -161,21 +180,14 @@ public final class FGManager {
     }
 
     public IWorldRegion getWorldRegion(World world, String name) {
-        for (IWorldRegion region : this.worldRegions.get(world)) {
-            if (region.getName().equalsIgnoreCase(name)) {
-                return region;
-            }
-        }
-        return null;
+        if (name == null) return null;
+        Map<String, IWorldRegion> names = this.worldRegionNames.get(world);
+        return names == null ? null : names.get(nameKey(name));
     }
 
     public IRegion getRegion(String name) {
-        for (IRegion region : this.regions) {
-            if (region.getName().equalsIgnoreCase(name)) {
-                return region;
-            }
-        }
-        return null;
+        if (name == null) return null;
+        return this.regionNames.get(nameKey(name));
     }
 
     public IRegion getRegionFromWorld(World world, String name) {
@@ -213,7 +225,10 @@ public final class FGManager {
     }
 
     public Set<IRegion> getAllRegions(World world, Vector3i chunk, boolean includeDisabled) {
-        return ImmutableSet.copyOf(this.regionCache.getData(world, chunk).getRegions(includeDisabled));
+        if (isOffMainThread()) {
+            return ImmutableSet.copyOf(getSnapshot().getRegionsInChunk(world, chunk.getX(), chunk.getY(), chunk.getZ(), includeDisabled));
+        }
+        return this.regionCache.getData(world, chunk).getRegions(includeDisabled);
     }
 
     public Set<IRegion> getRegionsAtPos(World world, Vector3d pos) {
@@ -221,11 +236,7 @@ public final class FGManager {
     }
 
     public Set<IRegion> getRegionsAtPos(World world, Vector3d pos, boolean includeDisabled) {
-        Vector3i chunk = new Vector3i(
-                GenericMath.floor(pos.getX() / 16.0),
-                GenericMath.floor(pos.getY() / 16.0),
-                GenericMath.floor(pos.getZ() / 16.0));
-        return this.regionCache.getData(world, chunk).getRegions(includeDisabled);
+        return getRegionsAtPos(world, pos.getX(), pos.getY(), pos.getZ(), includeDisabled);
     }
 
     public Set<IRegion> getRegionsAtPos(World world, Vector3i pos) {
@@ -233,7 +244,82 @@ public final class FGManager {
     }
 
     public Set<IRegion> getRegionsAtPos(World world, Vector3i pos, boolean includeDisabled) {
-        return getRegionsAtPos(world, pos.toDouble(), includeDisabled);
+        return getRegionsAtPos(world, pos.getX(), pos.getY(), pos.getZ(), includeDisabled);
+    }
+
+    public Set<IRegion> getRegionsAtPos(World world, int x, int y, int z, boolean includeDisabled) {
+        if (isOffMainThread()) {
+            return ImmutableSet.copyOf(getSnapshot().getRegionsInChunk(world, x >> 4, y >> 4, z >> 4, includeDisabled));
+        }
+        return this.regionCache.getData(world, x >> 4, y >> 4, z >> 4).getRegions(includeDisabled);
+    }
+
+    public Set<IRegion> getRegionsAtPos(World world, double x, double y, double z, boolean includeDisabled) {
+        return getRegionsAtPos(world, GenericMath.floor(x), GenericMath.floor(y), GenericMath.floor(z), includeDisabled);
+    }
+
+    public IHandler[] getHandlersAtPos(World world, Vector3i pos) {
+        return getHandlersAtPos(world, pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    public IHandler[] getHandlersAtPos(World world, Vector3d pos) {
+        return getHandlersAtPos(world, pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    /**
+     * Gets the enabled handlers of every enabled region containing the given block, sorted by priority.
+     * The array is cached and shared, so callers must not modify it.
+     * <p>
+     * This lookup is safe from any thread, but the returned handlers must only be evaluated on the main thread.
+     * Off the main thread, the array comes from the protection snapshot and is not shared.
+     *
+     * @param world The world of the block.
+     * @param x     The block x coordinate.
+     * @param y     The block y coordinate.
+     * @param z     The block z coordinate.
+     * @return The sorted handlers that apply at the position.
+     */
+    public IHandler[] getHandlersAtPos(World world, int x, int y, int z) {
+        if (isOffMainThread()) return getSnapshot().getHandlersAtPos(world, x, y, z);
+        return this.regionCache.getData(world, x >> 4, y >> 4, z >> 4).getHandlers(x, y, z);
+    }
+
+    /**
+     * Finds a box around a block in which every position is inside exactly the same enabled regions.
+     * The box stays valid until the epoch changes.
+     *
+     * @param world The world of the block.
+     * @param x     The block x coordinate.
+     * @param y     The block y coordinate.
+     * @param z     The block z coordinate.
+     * @param box   Receives the box as minimum x, y and z followed by maximum x, y and z, all inclusive.
+     * @return Whether a box was found.
+     * @see RegionCache.ChunkData#getUniformBox(int, int, int, int[])
+     */
+    public boolean getUniformBox(World world, int x, int y, int z, int[] box) {
+        if (isOffMainThread()) return false;
+        return this.regionCache.getData(world, x >> 4, y >> 4, z >> 4).getUniformBox(x, y, z, box);
+    }
+
+    /**
+     * Gets the enabled handlers of every enabled region containing the given position, sorted by priority.
+     * The array is cached and shared, so callers must not modify it.
+     * <p>
+     * This lookup is safe from any thread, but the returned handlers must only be evaluated on the main thread.
+     * Off the main thread, the array comes from the protection snapshot and is not shared.
+     *
+     * @param world The world of the position.
+     * @param x     The x coordinate.
+     * @param y     The y coordinate.
+     * @param z     The z coordinate.
+     * @return The sorted handlers that apply at the position.
+     */
+    public IHandler[] getHandlersAtPos(World world, double x, double y, double z) {
+        if (isOffMainThread()) return getSnapshot().getHandlersAtPos(world, x, y, z);
+        return this.regionCache.getData(world,
+                GenericMath.floor(x) >> 4,
+                GenericMath.floor(y) >> 4,
+                GenericMath.floor(z) >> 4).getHandlers(x, y, z);
     }
 
     public Set<IHandler> getHandlers() {
@@ -261,27 +347,21 @@ public final class FGManager {
         if (handler == null) return false;
         if (gethandler(handler.getName()) != null) return false;
         handlers.add(handler);
+        handlerNames.put(nameKey(handler.getName()), handler);
+        invalidateSnapshot();
         FGStorageManager.getInstance().addObject(handler);
         Sponge.getGame().getEventManager().post(FGEventFactory.createFGUpdateObjectEvent(FoxGuardMain.getCause(), handler));
         return true;
     }
 
     public IHandler gethandler(String name) {
-        for (IHandler handler : handlers) {
-            if (handler.getName().equalsIgnoreCase(name)) {
-                return handler;
-            }
-        }
-        return null;
+        if (name == null) return null;
+        return handlerNames.get(nameKey(name));
     }
 
     public IController getController(String name) {
-        for (IHandler handler : handlers) {
-            if ((handler instanceof IController) && handler.getName().equalsIgnoreCase(name)) {
-                return (IController) handler;
-            }
-        }
-        return null;
+        IHandler handler = gethandler(name);
+        return handler instanceof IController ? (IController) handler : null;
     }
 
     public boolean removeHandler(IHandler handler) {
@@ -297,6 +377,8 @@ public final class FGManager {
         FGStorageManager.getInstance().removeObject(handler);
         Sponge.getGame().getEventManager().post(FGEventFactory.createFGUpdateObjectEvent(FoxGuardMain.getCause(), handler));
         handlers.remove(handler);
+        handlerNames.remove(nameKey(handler.getName()), handler);
+        markHandlersDirty();
         return true;
     }
 
@@ -307,9 +389,10 @@ public final class FGManager {
             if (region == null) return false;
             if (!this.regions.contains(region)) return false;
             this.regions.remove(region);
+            this.regionNames.remove(nameKey(region.getName()), region);
             FGStorageManager.getInstance().removeObject(region);
             Sponge.getGame().getEventManager().post(FGEventFactory.createFGUpdateObjectEvent(FoxGuardMain.getCause(), region));
-            this.regionCache.markDirty(region, RegionCache.DirtyType.REMOVED);
+            this.markDirty(region, RegionCache.DirtyType.REMOVED);
             return true;
         }
     }
@@ -322,11 +405,13 @@ public final class FGManager {
                 return false;
             }
             this.worldRegions.get(region.getWorld()).remove(region);
+            removeWorldRegionName(region.getWorld(), region);
             removed = true;
         } else {
-            for (Set<IWorldRegion> set : this.worldRegions.values()) {
-                if (set.contains(region)) {
-                    set.remove(region);
+            for (Map.Entry<World, Set<IWorldRegion>> entry : this.worldRegions.entrySet()) {
+                if (entry.getValue().contains(region)) {
+                    entry.getValue().remove(region);
+                    removeWorldRegionName(entry.getKey(), region);
                     removed = true;
                 }
             }
@@ -334,33 +419,54 @@ public final class FGManager {
         if (removed) {
             FGStorageManager.getInstance().removeObject(region);
             Sponge.getGame().getEventManager().post(FGEventFactory.createFGUpdateObjectEvent(FoxGuardMain.getCause(), region));
-            this.regionCache.markDirty(region, RegionCache.DirtyType.REMOVED);
+            this.markDirty(region, RegionCache.DirtyType.REMOVED);
         }
         return removed;
     }
 
     public boolean link(ILinkable linkable, IHandler handler) {
         if (linkable == null || handler == null || linkable.getHandlers().contains(handler)) return false;
-        Sponge.getGame().getEventManager().post(FGEventFactory.createFGUpdateEvent(FoxGuardMain.getCause()));
-        return !(handler instanceof GlobalHandler && !(linkable instanceof GlobalWorldRegion || linkable instanceof GlobalRegion)) && linkable.addHandler(handler);
+        boolean linked = !(handler instanceof GlobalHandler && !(linkable instanceof GlobalWorldRegion || linkable instanceof GlobalRegion)) && linkable.addHandler(handler);
+        if (linked) {
+            bumpEpoch();
+            Sponge.getGame().getEventManager().post(FGEventFactory.createFGUpdateEvent(FoxGuardMain.getCause()));
+        }
+        return linked;
     }
 
     public boolean unlink(ILinkable linkable, IHandler handler) {
         if (linkable == null || handler == null || !linkable.getHandlers().contains(handler)) return false;
-        Sponge.getGame().getEventManager().post(FGEventFactory.createFGUpdateEvent(FoxGuardMain.getCause()));
-        return !(handler instanceof GlobalHandler) && linkable.removeHandler(handler);
+        boolean unlinked = !(handler instanceof GlobalHandler) && linkable.removeHandler(handler);
+        if (unlinked) {
+            bumpEpoch();
+            Sponge.getGame().getEventManager().post(FGEventFactory.createFGUpdateEvent(FoxGuardMain.getCause()));
+        }
+        return unlinked;
     }
 
     public boolean rename(IFGObject object, String newName) {
         if (object instanceof IWorldRegion) {
             IWorldRegion region = (IWorldRegion) object;
-            if (this.getWorldRegion(region.getWorld(), newName) != null) return false;
+            if (!this.isWorldRegionNameAvailable(newName, region.getWorld())) return false;
+        } else if (object instanceof IRegion) {
+            if (!this.isRegionNameAvailable(newName)) return false;
         } else if (object instanceof IHandler) {
             if (this.gethandler(newName) != null) return false;
         }
         FGStorageManager.getInstance().removeObject(object);
+        String oldKey = nameKey(object.getName());
         object.setName(newName);
+        String newKey = nameKey(object.getName());
+        if (object instanceof IWorldRegion) {
+            Map<String, IWorldRegion> names = this.worldRegionNames.get(((IWorldRegion) object).getWorld());
+            if (names != null && names.remove(oldKey, object)) names.put(newKey, (IWorldRegion) object);
+        } else if (object instanceof IRegion) {
+            if (this.regionNames.remove(oldKey, object)) this.regionNames.put(newKey, (IRegion) object);
+        } else if (object instanceof IHandler) {
+            if (this.handlerNames.remove(oldKey, object)) this.handlerNames.put(newKey, (IHandler) object);
+        }
         FGStorageManager.getInstance().addObject(object);
+        bumpEpoch();
         return true;
     }
 
@@ -369,11 +475,16 @@ public final class FGManager {
         gr.addHandler(this.globalHandler);
         gr.setWorld(world);
         this.worldRegions.get(world).add(gr);
-        this.regionCache.markDirty(gr, RegionCache.DirtyType.ADDED);
+        this.worldRegionNames.computeIfAbsent(world, k -> new HashMap<>()).put(nameKey(gr.getName()), gr);
+        this.markDirty(gr, RegionCache.DirtyType.ADDED);
     }
 
     public void unloadWorld(World world) {
         this.worldRegions.remove(world);
+        this.worldRegionNames.remove(world);
+        this.regionCache.unloadWorld(world);
+        bumpEpoch();
+        invalidateSnapshot();
     }
 
     public GlobalHandler getGlobalHandler() {
@@ -391,12 +502,95 @@ public final class FGManager {
         return true;
     }
 
+    private void removeWorldRegionName(World world, IWorldRegion region) {
+        Map<String, IWorldRegion> names = this.worldRegionNames.get(world);
+        if (names != null) names.remove(nameKey(region.getName()), region);
+    }
+
+    private static String nameKey(String name) {
+        return name.toLowerCase();
+    }
+
     public void markDirty(IRegion region, RegionCache.DirtyType type) {
         regionCache.markDirty(region, type);
+        bumpEpoch();
+        invalidateSnapshot();
+    }
+
+    public void markHandlersDirty() {
+        if (this.regionCache != null) this.regionCache.markHandlersDirty();
+        bumpEpoch();
+        invalidateSnapshot();
+    }
+
+    /**
+     * Gets the configuration epoch. It changes whenever anything that can affect a protection decision changes,
+     * so cached decisions are valid for as long as the epoch they were made in is current.
+     *
+     * @return The current epoch.
+     */
+    public int getEpoch() {
+        return this.epoch;
+    }
+
+    public void bumpEpoch() {
+        this.epoch++;
+    }
+
+    /**
+     * Signals that an object was modified, bumping both its own version and the epoch.
+     *
+     * @param object The modified object.
+     */
+    public void markModified(IFGObject object) {
+        if (object instanceof FGObjectBase) ((FGObjectBase) object).markModified();
+        else bumpEpoch();
+    }
+
+    /**
+     * Gets the latest published protection snapshot. Safe to call from any thread.
+     * On the main thread, pending changes are published first so the snapshot is never stale.
+     *
+     * @return The current protection snapshot.
+     */
+    public ProtectionSnapshot getSnapshot() {
+        if (this.snapshotScheduled && !isOffMainThread()) publishSnapshot();
+        return this.snapshot;
+    }
+
+    private void invalidateSnapshot() {
+        if (this.snapshot == null || this.snapshotScheduled) return;
+        this.snapshotScheduled = true;
+        Sponge.getScheduler().createTaskBuilder()
+                .execute(() -> {
+                    if (this.snapshotScheduled) publishSnapshot();
+                })
+                .submit(FoxGuardMain.instance());
+    }
+
+    private void publishSnapshot() {
+        this.snapshotScheduled = false;
+        this.snapshot = new ProtectionSnapshot(this.regions, this.worldRegions, this.handlers);
+    }
+
+    private static boolean isOffMainThread() {
+        return Sponge.isServerAvailable() && !Sponge.getServer().isMainThread();
+    }
+
+    public void clearUserCache(UUID user) {
+        this.handlers.forEach(handler -> handler.clearUserCache(user));
     }
 
     public void clearRegionCache(){
         this.regionCache.clearCaches();
     }
 
+    public void unloadChunk(World world, Vector3i chunk) {
+        this.regionCache.unloadChunk(world, chunk.getX(), chunk.getZ());
+    }
+
+    public RegionCache getRegionCache() {
+        return regionCache;
+    }
+
 }
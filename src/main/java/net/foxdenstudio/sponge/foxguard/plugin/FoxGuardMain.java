@@ -63,9 +63,11 @@ import org.spongepowered.api.event.entity.DisplaceEntityEvent;
 import org.spongepowered.api.event.entity.InteractEntityEvent;
 import org.spongepowered.api.event.entity.SpawnEntityEvent;
 import org.spongepowered.api.event.game.state.*;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
 import org.spongepowered.api.event.world.ExplosionEvent;
 import org.spongepowered.api.event.world.LoadWorldEvent;
 import org.spongepowered.api.event.world.UnloadWorldEvent;
+import org.spongepowered.api.event.world.chunk.UnloadChunkEvent;
 import org.spongepowered.api.plugin.Dependency;
 import org.spongepowered.api.plugin.Plugin;
 import org.spongepowered.api.plugin.PluginContainer;
@@ -202,6 +204,16 @@ public final class FoxGuardMain {
         FGManager.getInstance().unloadWorld(event.getTargetWorld());
     }
 
+    @Listener
+    public void chunkUnload(UnloadChunkEvent event) {
+        FGManager.getInstance().unloadChunk(event.getTargetChunk().getWorld(), event.getTargetChunk().getPosition());
+    }
+
+    @Listener
+    public void playerDisconnect(ClientConnectionEvent.Disconnect event) {
+        FGManager.getInstance().clearUserCache(event.getTargetEntity().getUniqueId());
+    }
+
     @Listener
     public void worldLoad(LoadWorldEvent event) {
         logger.info("Initializing global worldregion for world: \"" + event.getTargetWorld().getName() + "\"");
@@ -236,6 +248,7 @@ public final class FoxGuardMain {
         fgDispatcher.register(new CommandSave(), "save", "saveall", "save-all");
 
         fgDispatcher.register(new CommandPriority(), "priority", "prio", "level", "rank");
+        fgDispatcher.register(new CommandCache(), "cache");
 
         fgDispatcher.register(new CommandTest(), "test");
         fgDispatcher.register(new CommandLink2(), "link2");
@@ -0,0 +1,104 @@
+/*
+ * This file is part of FoxGuard, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) gravityfox - https://gravityfox.net/
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.foxdenstudio.sponge.foxguard.plugin.command;
+
+import com.google.common.collect.ImmutableList;
+import net.foxdenstudio.sponge.foxcore.plugin.command.FCCommandBase;
+import net.foxdenstudio.sponge.foxcore.plugin.command.util.AdvCmdParser;
+import net.foxdenstudio.sponge.foxguard.plugin.FGManager;
+import net.foxdenstudio.sponge.foxguard.plugin.util.RegionCache;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.format.TextColors;
+
+import java.util.List;
+import java.util.Optional;
+
+public class CommandCache extends FCCommandBase {
+
+    @Override
+    public CommandResult process(CommandSource source, String arguments) throws CommandException {
+        if (!testPermission(source)) {
+            source.sendMessage(Text.of(TextColors.RED, "You don't have permission to use this command!"));
+            return CommandResult.empty();
+        }
+
+        AdvCmdParser.ParseResult parse = AdvCmdParser.builder().arguments(arguments).parse();
+
+        RegionCache cache = FGManager.getInstance().getRegionCache();
+        long hits = cache.getHits(), misses = cache.getMisses();
+        long total = hits + misses;
+        int limit = cache.getChunkCacheSize();
+
+        Text.Builder builder = Text.builder();
+        builder.append(Text.of(TextColors.GREEN, "------- Region Cache -------\n"));
+        builder.append(Text.of(TextColors.GOLD, "Entries: ", TextColors.RESET, cache.getSize(),
+                TextColors.GRAY, " (limit per world: ", limit > 0 ? limit : "none", ")\n"));
+        builder.append(Text.of(TextColors.GOLD, "Hits: ", TextColors.RESET, hits,
+                TextColors.GRAY, " (", total > 0 ? String.format("%.1f", hits * 100.0 / total) : "0.0", "%)\n"));
+        builder.append(Text.of(TextColors.GOLD, "Misses: ", TextColors.RESET, misses, "\n"));
+        builder.append(Text.of(TextColors.GOLD, "Evictions: ", TextColors.RESET, cache.getEvictions(), "\n"));
+        builder.append(Text.of(TextColors.GOLD, "Chunk unloads: ", TextColors.RESET, cache.getUnloads()));
+        source.sendMessage(builder.build());
+
+        if (parse.flags.containsKey("reset")) {
+            cache.resetStats();
+            source.sendMessage(Text.of(TextColors.GREEN, "Cache counters reset."));
+        }
+        return CommandResult.success();
+    }
+
+    @Override
+    public List<String> getSuggestions(CommandSource source, String arguments) throws CommandException {
+        return ImmutableList.of();
+    }
+
+    @Override
+    public boolean testPermission(CommandSource source) {
+        return source.hasPermission("foxguard.command.info.cache");
+    }
+
+    @Override
+    public Optional<? extends Text> getShortDescription(CommandSource source) {
+        return Optional.of(Text.of("Shows statistics for the region cache."));
+    }
+
+    @Override
+    public Optional<? extends Text> getHelp(CommandSource source) {
+        return Optional.of(Text.of("This command shows how well the region cache is performing.\n" +
+                "It lists the number of cached chunk columns, the cache hits and misses, and how many entries were evicted or dropped by chunk unloads.\n" +
+                "Adding the \"--reset\" flag sets the counters back to zero after they are shown, so the next reading only covers new activity.\n" +
+                "If evictions are high, consider raising cache.chunkCacheSize in the config."));
+    }
+
+    @Override
+    public Text getUsage(CommandSource source) {
+        return Text.of("cache [--reset]");
+    }
+
+}
@@ -135,7 +135,7 @@ public class CommandHere extends FCCommandBase {
         boolean flag = false;
         Text.Builder output = Text.builder();
         final World finalWorld = world;
-        List<IRegion> regionList = FGManager.getInstance().getAllRegions(world).stream()
+        List<IRegion> regionList = FGManager.getInstance().getRegionsAtPos(world, new Vector3d(x, y, z), true).stream()
                 .filter(region -> region.contains(x, y, z, finalWorld))
                 .collect(Collectors.toList());
         List<IHandler> handlerList = new ArrayList<>();
@@ -88,7 +88,20 @@ public class LogicController extends ControllerBase {
 
     @Override
     public EventResult handle(@Nullable User user, FlagBitSet flags, ExtraContext extra) {
-        return EventResult.of(operator.operate(this.handlers, mode, shortCircuit, user, flags, extra));
+        return EventResult.of(handleState(user, flags, extra));
+    }
+
+    @Override
+    public boolean needsContext() {
+        for (IHandler handler : this.handlers) {
+            if (handler.needsContext()) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Tristate handleState(@Nullable User user, FlagBitSet flags, ExtraContext extra) {
+        return operator.operate(this.handlers, mode, shortCircuit, user, flags, extra);
     }
 
     @Override
@@ -188,7 +201,7 @@ public class LogicController extends ControllerBase {
             public Tristate operate(List<IHandler> handlers, Tristate mode, boolean shortCircuit, User user, FlagBitSet flags, ExtraContext extra) {
                 Tristate state = UNDEFINED;
                 for (IHandler handler : handlers) {
-                    Tristate ts = handler.handle(user, flags, extra).getState();
+                    Tristate ts = handler.handleState(user, flags, extra);
                     if (ts == UNDEFINED) ts = mode;
                     state = state.and(ts);
                     if (shortCircuit && state == FALSE) return FALSE;
@@ -201,7 +214,7 @@ public class LogicController extends ControllerBase {
             public Tristate operate(List<IHandler> handlers, Tristate mode, boolean shortCircuit, User user, FlagBitSet flags, ExtraContext extra) {
                 Tristate state = UNDEFINED;
                 for (IHandler handler : handlers) {
-                    Tristate ts = handler.handle(user, flags, extra).getState();
+                    Tristate ts = handler.handleState(user, flags, extra);
                     if (ts == UNDEFINED) ts = mode;
                     state = state.or(ts);
                     if (shortCircuit && state == TRUE) return TRUE;
@@ -214,7 +227,7 @@ public class LogicController extends ControllerBase {
             public Tristate operate(List<IHandler> handlers, Tristate mode, boolean shortCircuit, User user, FlagBitSet flags, ExtraContext extra) {
                 Tristate state = UNDEFINED;
                 for (IHandler handler : handlers) {
-                    Tristate ts = handler.handle(user, flags, extra).getState();
+                    Tristate ts = handler.handleState(user, flags, extra);
                     if (ts == UNDEFINED) ts = mode;
                     state = XORMatrix[state.ordinal()][ts.ordinal()];
                 }
@@ -225,7 +238,7 @@ public class LogicController extends ControllerBase {
             @Override
             public Tristate operate(List<IHandler> handlers, Tristate mode, boolean shortCircuit, User user, FlagBitSet flags, ExtraContext extra) {
                 if (handlers.size() > 0) {
-                    Tristate state = handlers.get(0).handle(user, flags, extra).getState();
+                    Tristate state = handlers.get(0).handleState(user, flags, extra);
                     if (state == UNDEFINED) state = mode;
                     if (state == TRUE) state = FALSE;
                     else if (state == FALSE) state = TRUE;
@@ -238,7 +251,7 @@ public class LogicController extends ControllerBase {
             public Tristate operate(List<IHandler> handlers, Tristate mode, boolean shortCircuit, User user, FlagBitSet flags, ExtraContext extra) {
                 Tristate state = UNDEFINED;
                 for (IHandler handler : handlers) {
-                    Tristate ts = handler.handle(user, flags, extra).getState();
+                    Tristate ts = handler.handleState(user, flags, extra);
                     if (ts == UNDEFINED) ts = mode;
                     state = state.and(ts);
                     if (shortCircuit && state == FALSE) break;
@@ -253,7 +266,7 @@ public class LogicController extends ControllerBase {
             public Tristate operate(List<IHandler> handlers, Tristate mode, boolean shortCircuit, User user, FlagBitSet flags, ExtraContext extra) {
                 Tristate state = UNDEFINED;
                 for (IHandler handler : handlers) {
-                    Tristate ts = handler.handle(user, flags, extra).getState();
+                    Tristate ts = handler.handleState(user, flags, extra);
                     if (ts == UNDEFINED) ts = mode;
                     state = state.or(ts);
                     if (shortCircuit && state == TRUE) break;
@@ -268,7 +281,7 @@ public class LogicController extends ControllerBase {
             public Tristate operate(List<IHandler> handlers, Tristate mode, boolean shortCircuit, User user, FlagBitSet flags, ExtraContext extra) {
                 Tristate state = UNDEFINED;
                 for (IHandler handler : handlers) {
-                    Tristate ts = handler.handle(user, flags, extra).getState();
+                    Tristate ts = handler.handleState(user, flags, extra);
                     if (ts == UNDEFINED) ts = mode;
                     state = XORMatrix[state.ordinal()][ts.ordinal()];
                 }
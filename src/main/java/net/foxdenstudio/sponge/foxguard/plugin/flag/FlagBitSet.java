@@ -65,6 +65,16 @@ public class FlagBitSet extends BitSet {
         this.set(flag.id, value);
     }
 
+    /**
+     * Gets the interned, immutable flag set equal to this one.
+     * The result can be shared freely and is cheap to hash.
+     *
+     * @return The interned flag set.
+     */
+    public ImmutableFlagBitSet intern() {
+        return ImmutableFlagBitSet.of(this);
+    }
+
     public Set<Flag> toFlagSet() {
         ImmutableSet.Builder<Flag> builder = ImmutableSet.builder();
         FlagRegistry registry = FlagRegistry.getInstance();
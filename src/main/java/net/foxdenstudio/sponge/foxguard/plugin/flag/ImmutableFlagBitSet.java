@@ -0,0 +1,226 @@
+/*
+ * This file is part of FoxGuard, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) gravityfox - https://gravityfox.net/
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.foxdenstudio.sponge.foxguard.plugin.flag;
+
+import java.util.BitSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable, interned flag set.
+ * Equal flag combinations share a single instance, so these can be kept in static fields and used as cache keys
+ * without cloning. The hash code is computed once.
+ * <p>
+ * Every interned combination also gets a dense id, starting at zero in the order combinations are first seen.
+ * Caches can use it to index arrays instead of hashing the set.
+ * <p>
+ * Instances are obtained through {@link FlagBitSet#intern()}. Mutating methods throw {@link UnsupportedOperationException}.
+ */
+public final class ImmutableFlagBitSet extends FlagBitSet {
+
+    private static final ConcurrentMap<BitSet, ImmutableFlagBitSet> POOL = new ConcurrentHashMap<>();
+
+    private static int nextId = 0;
+
+    private final int id;
+    private final int hash;
+    private final boolean frozen;
+    private Set<Flag> flagSet;
+    private volatile ImmutableFlagBitSet[] withCache = new ImmutableFlagBitSet[0];
+
+    private ImmutableFlagBitSet(BitSet source, int id) {
+        super.or(source);
+        this.id = id;
+        this.hash = super.hashCode();
+        this.frozen = true;
+    }
+
+    static ImmutableFlagBitSet of(BitSet set) {
+        if (set instanceof ImmutableFlagBitSet) return (ImmutableFlagBitSet) set;
+        ImmutableFlagBitSet interned = POOL.get(set);
+        if (interned == null) {
+            synchronized (POOL) {
+                interned = POOL.get(set);
+                if (interned == null) {
+                    interned = new ImmutableFlagBitSet(set, nextId++);
+                    POOL.put(interned, interned);
+                }
+            }
+        }
+        return interned;
+    }
+
+    /**
+     * Gets the number of interned flag combinations. Every id is less than this.
+     *
+     * @return The number of ids handed out so far.
+     */
+    public static int getIdCount() {
+        synchronized (POOL) {
+            return nextId;
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Gets the interned flag set that contains all of these flags plus the given one.
+     * Results are memoized per flag, so repeated calls do not allocate.
+     *
+     * @param flag The flag to add.
+     * @return The interned flag set with the flag set.
+     */
+    public ImmutableFlagBitSet with(Flag flag) {
+        if (get(flag.id)) return this;
+        ImmutableFlagBitSet[] cache = this.withCache;
+        if (flag.id < cache.length && cache[flag.id] != null) return cache[flag.id];
+        FlagBitSet copy = new FlagBitSet();
+        copy.or(this);
+        copy.set(flag.id);
+        ImmutableFlagBitSet result = of(copy);
+        ImmutableFlagBitSet[] updated = new ImmutableFlagBitSet[Math.max(cache.length, flag.id + 1)];
+        System.arraycopy(cache, 0, updated, 0, cache.length);
+        updated[flag.id] = result;
+        this.withCache = updated;
+        return result;
+    }
+
+    @Override
+    public ImmutableFlagBitSet intern() {
+        return this;
+    }
+
+    @Override
+    public Set<Flag> toFlagSet() {
+        if (flagSet == null) flagSet = super.toFlagSet();
+        return flagSet;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj || super.equals(obj);
+    }
+
+    /**
+     * Gets a mutable copy of this flag set.
+     */
+    @Override
+    public Object clone() {
+        FlagBitSet copy = new FlagBitSet();
+        copy.or(this);
+        return copy;
+    }
+
+    @Override
+    public void set(int bitIndex) {
+        checkMutable();
+        super.set(bitIndex);
+    }
+
+    @Override
+    public void set(int bitIndex, boolean value) {
+        checkMutable();
+        super.set(bitIndex, value);
+    }
+
+    @Override
+    public void set(int fromIndex, int toIndex) {
+        checkMutable();
+        super.set(fromIndex, toIndex);
+    }
+
+    @Override
+    public void set(int fromIndex, int toIndex, boolean value) {
+        checkMutable();
+        super.set(fromIndex, toIndex, value);
+    }
+
+    @Override
+    public void clear(int bitIndex) {
+        checkMutable();
+        super.clear(bitIndex);
+    }
+
+    @Override
+    public void clear(int fromIndex, int toIndex) {
+        checkMutable();
+        super.clear(fromIndex, toIndex);
+    }
+
+    @Override
+    public void clear() {
+        checkMutable();
+        super.clear();
+    }
+
+    @Override
+    public void flip(int bitIndex) {
+        checkMutable();
+        super.flip(bitIndex);
+    }
+
+    @Override
+    public void flip(int fromIndex, int toIndex) {
+        checkMutable();
+        super.flip(fromIndex, toIndex);
+    }
+
+    @Override
+    public void and(BitSet set) {
+        checkMutable();
+        super.and(set);
+    }
+
+    @Override
+    public void or(BitSet set) {
+        checkMutable();
+        super.or(set);
+    }
+
+    @Override
+    public void xor(BitSet set) {
+        checkMutable();
+        super.xor(set);
+    }
+
+    @Override
+    public void andNot(BitSet set) {
+        checkMutable();
+        super.andNot(set);
+    }
+
+    private void checkMutable() {
+        if (frozen) throw new UnsupportedOperationException("Interned flag sets are immutable!");
+    }
+}
@@ -39,8 +39,11 @@ import net.foxdenstudio.sponge.foxguard.plugin.FoxGuardMain;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.Flag;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagBitSet;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagRegistry;
+import net.foxdenstudio.sponge.foxguard.plugin.handler.util.CompiledEntries;
 import net.foxdenstudio.sponge.foxguard.plugin.handler.util.Entry;
+import net.foxdenstudio.sponge.foxguard.plugin.handler.util.FlagStateCache;
 import net.foxdenstudio.sponge.foxguard.plugin.handler.util.Operation;
+import net.foxdenstudio.sponge.foxguard.plugin.handler.util.UserCache;
 import net.foxdenstudio.sponge.foxguard.plugin.listener.util.EventResult;
 import net.foxdenstudio.sponge.foxguard.plugin.object.factory.IHandlerFactory;
 import net.foxdenstudio.sponge.foxguard.plugin.util.EverythingSet;
@@ -92,16 +95,19 @@ public class BasicHandler extends HandlerBase {
     private final Group defaultGroup;
     private final List<Entry> defaultPermissions;
 
-    private final Map<Group, Map<FlagBitSet, Tristate>> groupPermCache;
-    private final Map<FlagBitSet, Tristate> defaultPermCache;
-    private final Map<Set<Group>, Map<FlagBitSet, Tristate>> groupSetPermCache;
-    private final Map<UUID, Set<Group>> userGroupCache;
-    private final Map<UUID, Map<FlagBitSet, Tristate>> userPermCache;
+    private final Map<Group, CompiledEntries> compiledGroupPermissions = new HashMap<>();
+    private CompiledEntries compiledDefaultPermissions;
+
+    private final Map<Group, FlagStateCache> groupPermCache;
+    private final FlagStateCache defaultPermCache;
+    private final Map<Set<Group>, FlagStateCache> groupSetPermCache;
+    private final UserCache<Set<Group>> userGroupCache;
+    private final UserCache<FlagStateCache> userPermCache;
 
     private PassiveSetting passiveSetting = PassiveSetting.PASSTHROUGH;
     private Group passiveGroup;
-    private Map<FlagBitSet, Tristate> passiveGroupCacheRef;
-    private final Map<FlagBitSet, Tristate> passivePermCache;
+    private FlagStateCache passiveGroupCacheRef;
+    private final FlagStateCache passivePermCache;
 
     public BasicHandler(String name, int priority) {
         this(name, true, priority,
@@ -125,38 +131,15 @@ public class BasicHandler extends HandlerBase {
 
         this.groupPermCache = new CacheMap<>((k1, m1) -> {
             if (k1 instanceof Group) {
-                List<Entry> entries = BasicHandler.this.groupPermissions.get(k1);
-                Map<FlagBitSet, Tristate> map = new CacheMap<>((k2, m2) -> {
-                    if (k2 instanceof FlagBitSet) {
-                        FlagBitSet flags = (FlagBitSet) k2;
-                        Tristate state = null;
-                        for (Entry entry : entries) {
-                            if (flags.toFlagSet().containsAll(entry.set)) {
-                                state = entry.state;
-                                break;
-                            }
-                        }
-                        m2.put(flags, state);
-                        return state;
-                    } else return null;
-                });
-                m1.put((Group) k1, map);
-                return map;
+                Group group = (Group) k1;
+                FlagStateCache cache = new FlagStateCache(flags -> getCompiledPermissions(group).match(flags));
+                m1.put(group, cache);
+                return cache;
             } else return null;
         });
-        this.defaultPermCache = new CacheMap<>((k, m) -> {
-            if (k instanceof FlagBitSet) {
-                FlagBitSet flags = (FlagBitSet) k;
-                Tristate state = Tristate.UNDEFINED;
-                for (Entry entry : BasicHandler.this.defaultPermissions) {
-                    if (flags.toFlagSet().containsAll(entry.set)) {
-                        state = entry.state;
-                        break;
-                    }
-                }
-                m.put(flags, state);
-                return state;
-            } else return null;
+        this.defaultPermCache = new FlagStateCache(flags -> {
+            Tristate state = getCompiledPermissions(BasicHandler.this.defaultGroup).match(flags);
+            return state == null ? Tristate.UNDEFINED : state;
         });
         this.groupSetPermCache = new CacheMap<>((k1, m1) -> {
             if (k1 instanceof Set) {
@@ -164,66 +147,46 @@ public class BasicHandler extends HandlerBase {
                     if (!(o instanceof Group)) return null;
                 }
                 Set<Group> set = (Set<Group>) k1;
-                Map<FlagBitSet, Tristate> map = new CacheMap<>((k2, m2) -> {
-                    if (k2 instanceof FlagBitSet) {
-                        Tristate state = null;
-                        FlagBitSet flags = (FlagBitSet) k2;
-                        for (Group group : set) {
-                            state = this.groupPermCache.get(group).get(flags);
-                            if (state != null) break;
-                        }
-                        if (state == null) state = this.defaultPermCache.get(flags);
-                        m2.put(flags, state);
-                        return state;
-                    } else return null;
+                FlagStateCache cache = new FlagStateCache(flags -> {
+                    Tristate state = null;
+                    for (Group group : set) {
+                        state = this.groupPermCache.get(group).get(flags);
+                        if (state != null) break;
+                    }
+                    if (state == null) state = this.defaultPermCache.get(flags);
+                    return state;
                 });
-                m1.put(set, map);
-                return map;
-            } else return null;
-        });
-        this.userGroupCache = new CacheMap<>((k, m) -> {
-            if (k instanceof UUID) {
-                UUID user = ((UUID) k);
-                Set<Group> userGroups = this.groups.stream().filter(group -> group.users.contains(user)).collect(GuavaCollectors.toImmutableSet());
-                m.put(user, userGroups);
-                return userGroups;
+                m1.put(set, cache);
+                return cache;
             } else return null;
         });
-        this.userPermCache = new CacheMap<>((k, m) -> {
-            if (k instanceof UUID) {
-                UUID user = ((UUID) k);
-                Set<Group> userGroups = this.userGroupCache.get(user);
-                Map<FlagBitSet, Tristate> permCache;
-                if (userGroups.size() == 0)
-                    permCache = this.defaultPermCache;
-                else {
-                    permCache = this.groupSetPermCache.get(userGroups);
-                }
-                m.put(user, permCache);
-                return permCache;
-            } else return null;
+        this.userGroupCache = new UserCache<>(user ->
+                this.groups.stream().filter(group -> group.users.contains(user)).collect(GuavaCollectors.toImmutableSet()));
+        this.userPermCache = new UserCache<>(user -> {
+            Set<Group> userGroups = this.userGroupCache.get(user);
+            if (userGroups.size() == 0)
+                return this.defaultPermCache;
+            else {
+                return this.groupSetPermCache.get(userGroups);
+            }
         });
-        this.passivePermCache = new CacheMap<>((k, m) -> {
-            if (k instanceof FlagBitSet) {
-                FlagBitSet flags = (FlagBitSet) k;
-                Tristate state = Tristate.UNDEFINED;
-                switch (passiveSetting) {
-                    case ALLOW:
-                        state = Tristate.TRUE;
-                        break;
-                    case DENY:
-                        state = Tristate.FALSE;
-                        break;
-                    case GROUP:
-                        state = passiveGroupCacheRef.get(flags);
-                        break;
-                    case DEFAULT:
-                        state = defaultPermCache.get(flags);
-                        break;
-                }
-                m.put(flags, state);
-                return state;
-            } else return null;
+        this.passivePermCache = new FlagStateCache(flags -> {
+            Tristate state = Tristate.UNDEFINED;
+            switch (passiveSetting) {
+                case ALLOW:
+                    state = Tristate.TRUE;
+                    break;
+                case DENY:
+                    state = Tristate.FALSE;
+                    break;
+                case GROUP:
+                    state = passiveGroupCacheRef.get(flags);
+                    break;
+                case DEFAULT:
+                    state = defaultPermCache.get(flags);
+                    break;
+            }
+            return state;
         });
     }
 
@@ -404,7 +367,7 @@ public class BasicHandler extends HandlerBase {
                 if (op != Operation.SET)
                     return ProcessResult.of(false, Text.of("Must specify a user or a group to add!"));
                 else {
-                    group.users.clear();
+                    clearUsers(group);
                     return ProcessResult.of(true, Text.of("Successfully cleared group!"));
                 }
             }
@@ -1008,8 +971,29 @@ public class BasicHandler extends HandlerBase {
 
     @Override
     public EventResult handle(@Nullable User user, FlagBitSet flags, ExtraContext extra) {
-        if (user == null) return EventResult.of(this.passivePermCache.get(flags));
-        else return EventResult.of(this.userPermCache.get(user.getUniqueId()).get(flags));
+        return EventResult.of(handleState(user, flags, extra));
+    }
+
+    @Override
+    public boolean needsContext() {
+        return false;
+    }
+
+    @Override
+    public Tristate handleState(@Nullable User user, FlagBitSet flags, ExtraContext extra) {
+        if (user == null) return this.passivePermCache.get(flags);
+        return this.userPermCache.get(user.getUniqueId()).get(flags);
+    }
+
+    @Override
+    public boolean isMemoizable() {
+        return true;
+    }
+
+    @Override
+    public void clearUserCache(UUID user) {
+        this.userGroupCache.release(user);
+        this.userPermCache.release(user);
     }
 
     @Override
@@ -1227,17 +1211,19 @@ public class BasicHandler extends HandlerBase {
     public boolean removeGroup(Group group) {
         if (this.groups.contains(group)) {
             this.groupPermissions.remove(group);
+            this.compiledGroupPermissions.remove(group);
             this.groupPermCache.remove(group);
             group.users.forEach(this.userGroupCache::remove);
             group.users.forEach(this.userPermCache::remove);
             Set<Set<Group>> groupSuperSet = new HashSet<>();
-            for (Map.Entry<Set<Group>, Map<FlagBitSet, Tristate>> entry : this.groupSetPermCache.entrySet()) {
+            for (Map.Entry<Set<Group>, FlagStateCache> entry : this.groupSetPermCache.entrySet()) {
                 Set<Group> key = entry.getKey();
                 if (key.contains(group)) groupSuperSet.add(key);
             }
             groupSuperSet.forEach(this.groupSetPermCache::remove);
             this.groups.remove(group);
             if (this.passiveGroup.equals(group)) this.setPassiveSetting(PassiveSetting.PASSTHROUGH);
+            markModified();
             return true;
         }
         return false;
@@ -1261,11 +1247,12 @@ public class BasicHandler extends HandlerBase {
             this.groups.add(index, group);
             group.users.forEach(this.userPermCache::remove);
             Set<Set<Group>> groupSuperSet = new HashSet<>();
-            for (Map.Entry<Set<Group>, Map<FlagBitSet, Tristate>> entry : this.groupSetPermCache.entrySet()) {
+            for (Map.Entry<Set<Group>, FlagStateCache> entry : this.groupSetPermCache.entrySet()) {
                 Set<Group> key = entry.getKey();
                 if (key.contains(group)) groupSuperSet.add(key);
             }
             groupSuperSet.forEach(this.groupSetPermCache::remove);
+            markModified();
             return true;
         } else return false;
     }
@@ -1290,6 +1277,7 @@ public class BasicHandler extends HandlerBase {
             group.users.add(user);
             this.userPermCache.remove(user);
             this.userGroupCache.remove(user);
+            markModified();
             return true;
         }
     }
@@ -1304,6 +1292,7 @@ public class BasicHandler extends HandlerBase {
         } else if (group.users.remove(user)) {
             this.userGroupCache.remove(user);
             this.userPermCache.remove(user);
+            markModified();
             return true;
         } else return false;
     }
@@ -1314,6 +1303,7 @@ public class BasicHandler extends HandlerBase {
             this.userPermCache.remove(user);
         }
         group.users.clear();
+        markModified();
     }
 
     public boolean addFlagEntry(Group group, Entry entry) {
@@ -1337,6 +1327,7 @@ public class BasicHandler extends HandlerBase {
         for (Entry groupEntry : groupEntries) {
             if (groupEntry.set.equals(entry.set)) {
                 groupEntry.state = entry.state;
+                clearFlagCacheForGroup(group);
                 return;
             }
         }
@@ -1441,22 +1432,42 @@ public class BasicHandler extends HandlerBase {
             }
             this.passivePermCache.clear();
         }
+        markModified();
     }
 
     private void clearFlagCacheForGroup(Group group) {
         if (group == defaultGroup) {
+            this.compiledDefaultPermissions = null;
             this.defaultPermCache.clear();
             this.userPermCache.clear();
         } else {
+            this.compiledGroupPermissions.remove(group);
             this.groupPermCache.get(group).clear();
             group.users.forEach(this.userPermCache::remove);
         }
         Set<Set<Group>> groupSuperSet = new HashSet<>();
-        for (Map.Entry<Set<Group>, Map<FlagBitSet, Tristate>> cacheEntry : this.groupSetPermCache.entrySet()) {
+        for (Map.Entry<Set<Group>, FlagStateCache> cacheEntry : this.groupSetPermCache.entrySet()) {
             Set<Group> key = cacheEntry.getKey();
             if (key.contains(group)) groupSuperSet.add(key);
         }
         groupSuperSet.forEach(this.groupSetPermCache::remove);
+        markModified();
+    }
+
+    private CompiledEntries getCompiledPermissions(Group group) {
+        if (group == this.defaultGroup) {
+            if (this.compiledDefaultPermissions == null)
+                this.compiledDefaultPermissions = CompiledEntries.compile(this.defaultPermissions);
+            return this.compiledDefaultPermissions;
+        } else {
+            CompiledEntries compiled = this.compiledGroupPermissions.get(group);
+            if (compiled == null) {
+                List<Entry> entries = this.groupPermissions.get(group);
+                compiled = CompiledEntries.compile(entries != null ? entries : ImmutableList.of());
+                this.compiledGroupPermissions.put(group, compiled);
+            }
+            return compiled;
+        }
     }
 
     private List<Entry> getGroupPermissions(Group group) {
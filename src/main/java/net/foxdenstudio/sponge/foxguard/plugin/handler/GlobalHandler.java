@@ -31,12 +31,13 @@ import net.foxdenstudio.sponge.foxcore.plugin.command.util.AdvCmdParser;
 import net.foxdenstudio.sponge.foxcore.plugin.command.util.FlagMapper;
 import net.foxdenstudio.sponge.foxcore.plugin.command.util.ProcessResult;
 import net.foxdenstudio.sponge.foxcore.plugin.util.Aliases;
-import net.foxdenstudio.sponge.foxcore.plugin.util.CacheMap;
 import net.foxdenstudio.sponge.foxcore.plugin.util.FCPUtil;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.Flag;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagBitSet;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagRegistry;
+import net.foxdenstudio.sponge.foxguard.plugin.handler.util.CompiledEntries;
 import net.foxdenstudio.sponge.foxguard.plugin.handler.util.Entry;
+import net.foxdenstudio.sponge.foxguard.plugin.handler.util.FlagStateCache;
 import net.foxdenstudio.sponge.foxguard.plugin.listener.util.EventResult;
 import net.foxdenstudio.sponge.foxguard.plugin.object.IGlobal;
 import net.foxdenstudio.sponge.foxguard.plugin.util.ExtraContext;
@@ -74,24 +75,16 @@ public class GlobalHandler extends HandlerBase implements IGlobal {
     };
 
     private final List<Entry> entries;
-    private final Map<FlagBitSet, Tristate> permCache;
+    private final FlagStateCache permCache;
+    private CompiledEntries compiledEntries;
 
     public GlobalHandler() {
         super(NAME, true, Integer.MIN_VALUE / 2);
         this.entries = new ArrayList<>();
-        this.permCache = new CacheMap<>((k, m) -> {
-            if (k instanceof FlagBitSet) {
-                FlagBitSet flags = (FlagBitSet) k;
-                Tristate state = Tristate.UNDEFINED;
-                for (Entry entry : GlobalHandler.this.entries) {
-                    if (flags.toFlagSet().containsAll(entry.set)) {
-                        state = entry.state;
-                        break;
-                    }
-                }
-                m.put(flags, state);
-                return state;
-            } else return null;
+        this.permCache = new FlagStateCache(flags -> {
+            if (compiledEntries == null) compiledEntries = CompiledEntries.compile(GlobalHandler.this.entries);
+            Tristate state = compiledEntries.match(flags);
+            return state == null ? Tristate.UNDEFINED : state;
         });
     }
 
@@ -122,7 +115,17 @@ public class GlobalHandler extends HandlerBase implements IGlobal {
 
     @Override
     public EventResult handle(@Nullable User user, FlagBitSet flags, ExtraContext extra) {
-        return EventResult.of(this.permCache.get(flags));
+        return EventResult.of(handleState(user, flags, extra));
+    }
+
+    @Override
+    public boolean needsContext() {
+        return false;
+    }
+
+    @Override
+    public Tristate handleState(@Nullable User user, FlagBitSet flags, ExtraContext extra) {
+        return this.permCache.get(flags);
     }
 
     @Override
@@ -511,6 +514,7 @@ public class GlobalHandler extends HandlerBase implements IGlobal {
                 .map(Optional::get)
                 .map(Entry::deserialize)
                 .forEach(this.entries::add);
+        clearCache();
     }
 
     @Override
@@ -534,7 +538,7 @@ public class GlobalHandler extends HandlerBase implements IGlobal {
             if (groupEntry.set.equals(entry.set)) return false;
         }
         this.entries.add(index, entry);
-        this.permCache.clear();
+        clearCache();
         return true;
     }
 
@@ -542,11 +546,12 @@ public class GlobalHandler extends HandlerBase implements IGlobal {
         for (Entry groupEntry : this.entries) {
             if (groupEntry.set.equals(entry.set)) {
                 groupEntry.state = entry.state;
+                clearCache();
                 return;
             }
         }
         this.entries.add(entry);
-        this.permCache.clear();
+        clearCache();
     }
 
     public void setFlagEntry(int index, Entry entry) {
@@ -559,7 +564,7 @@ public class GlobalHandler extends HandlerBase implements IGlobal {
         }
         if (original != null) this.entries.remove(original);
         this.entries.add(index, entry);
-        this.permCache.clear();
+        clearCache();
     }
 
     public void setFlagEntry(int index, Tristate state) {
@@ -567,7 +572,7 @@ public class GlobalHandler extends HandlerBase implements IGlobal {
             throw new IndexOutOfBoundsException("Index out of bounds: " + index + " Range: 0-" + (this.entries.size() - 1));
         Entry entry = this.entries.get(index);
         entry.state = state;
-        this.permCache.clear();
+        clearCache();
     }
 
     public boolean removeFlagEntry(Set<Flag> flags) {
@@ -579,7 +584,7 @@ public class GlobalHandler extends HandlerBase implements IGlobal {
         }
         if (toRemove == null) return false;
         this.entries.remove(toRemove);
-        this.permCache.clear();
+        clearCache();
         return true;
     }
 
@@ -587,7 +592,7 @@ public class GlobalHandler extends HandlerBase implements IGlobal {
         if (index < 0 || index >= this.entries.size())
             throw new IndexOutOfBoundsException("Index out of bounds: " + index + " Range: 0-" + (this.entries.size() - 1));
         this.entries.remove(index);
-        this.permCache.clear();
+        clearCache();
     }
 
     public boolean moveFlagEntry(Set<Flag> flags, int destination) {
@@ -601,7 +606,7 @@ public class GlobalHandler extends HandlerBase implements IGlobal {
         }
         if (toMove == null) return false;
         this.entries.remove(toMove);
-        this.permCache.clear();
+        clearCache();
         return true;
     }
 
@@ -612,7 +617,18 @@ public class GlobalHandler extends HandlerBase implements IGlobal {
             throw new IndexOutOfBoundsException("Destination index out of bounds: " + destination + " Range: 0-" + (this.entries.size() - 1));
         Entry entry = this.entries.remove(source);
         this.entries.add(destination, entry);
+        clearCache();
+    }
+
+    @Override
+    public boolean isMemoizable() {
+        return true;
+    }
+
+    private void clearCache() {
+        this.compiledEntries = null;
         this.permCache.clear();
+        markModified();
     }
 
 }
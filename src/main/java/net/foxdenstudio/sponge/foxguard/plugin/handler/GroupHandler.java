@@ -33,12 +33,16 @@ import net.foxdenstudio.sponge.foxcore.plugin.command.util.ProcessResult;
 import net.foxdenstudio.sponge.foxcore.plugin.util.Aliases;
 import net.foxdenstudio.sponge.foxcore.plugin.util.CacheMap;
 import net.foxdenstudio.sponge.foxcore.plugin.util.FCPUtil;
+import net.foxdenstudio.sponge.foxguard.plugin.FGConfigManager;
 import net.foxdenstudio.sponge.foxguard.plugin.FGStorageManager;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.Flag;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagBitSet;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagRegistry;
+import net.foxdenstudio.sponge.foxguard.plugin.handler.util.CompiledEntries;
 import net.foxdenstudio.sponge.foxguard.plugin.handler.util.Entry;
+import net.foxdenstudio.sponge.foxguard.plugin.handler.util.FlagStateCache;
 import net.foxdenstudio.sponge.foxguard.plugin.handler.util.Operation;
+import net.foxdenstudio.sponge.foxguard.plugin.handler.util.UserCache;
 import net.foxdenstudio.sponge.foxguard.plugin.listener.util.EventResult;
 import net.foxdenstudio.sponge.foxguard.plugin.object.factory.IHandlerFactory;
 import net.foxdenstudio.sponge.foxguard.plugin.util.EverythingSet;
@@ -92,9 +96,18 @@ public class GroupHandler extends HandlerBase {
     private final Group defaultGroup;
     private final List<Entry> defaultPermissions;
 
-    private final Map<Group, Map<FlagBitSet, Tristate>> groupPermCache;
-    private final Map<FlagBitSet, Tristate> defaultPermCache;
-    private final Map<Set<Group>, Map<FlagBitSet, Tristate>> groupSetPermCache;
+    private final Map<Group, CompiledEntries> compiledGroupPermissions = new HashMap<>();
+    private CompiledEntries compiledDefaultPermissions;
+
+    private final Map<Group, FlagStateCache> groupPermCache;
+    private final FlagStateCache defaultPermCache;
+    private final Map<Set<Group>, FlagStateCache> groupSetPermCache;
+
+    private final UserCache<Membership> membershipCache = new UserCache<>();
+    private Group[] permissionGroups;
+    private String[] permissionNodes;
+    private int membershipVersion = 0;
+    private int permCacheVersion = 0;
 
     public GroupHandler(String name, int priority) {
         this(name, true, priority,
@@ -118,38 +131,15 @@ public class GroupHandler extends HandlerBase {
 
         this.groupPermCache = new CacheMap<>((k1, m1) -> {
             if (k1 instanceof Group) {
-                List<Entry> entries = GroupHandler.this.groupPermissions.get(k1);
-                Map<FlagBitSet, Tristate> map = new CacheMap<>((k2, m2) -> {
-                    if (k2 instanceof FlagBitSet) {
-                        FlagBitSet flags = (FlagBitSet) k2;
-                        Tristate state = null;
-                        for (Entry entry : entries) {
-                            if (flags.toFlagSet().containsAll(entry.set)) {
-                                state = entry.state;
-                                break;
-                            }
-                        }
-                        m2.put(flags, state);
-                        return state;
-                    } else return null;
-                });
-                m1.put((Group) k1, map);
-                return map;
+                Group group = (Group) k1;
+                FlagStateCache cache = new FlagStateCache(flags -> getCompiledPermissions(group).match(flags));
+                m1.put(group, cache);
+                return cache;
             } else return null;
         });
-        this.defaultPermCache = new CacheMap<>((k, m) -> {
-            if (k instanceof FlagBitSet) {
-                FlagBitSet flags = (FlagBitSet) k;
-                Tristate state = Tristate.UNDEFINED;
-                for (Entry entry : GroupHandler.this.defaultPermissions) {
-                    if (flags.toFlagSet().containsAll(entry.set)) {
-                        state = entry.state;
-                        break;
-                    }
-                }
-                m.put(flags, state);
-                return state;
-            } else return null;
+        this.defaultPermCache = new FlagStateCache(flags -> {
+            Tristate state = getCompiledPermissions(GroupHandler.this.defaultGroup).match(flags);
+            return state == null ? Tristate.UNDEFINED : state;
         });
         this.groupSetPermCache = new CacheMap<>((k1, m1) -> {
             if (k1 instanceof Set) {
@@ -157,21 +147,17 @@ public class GroupHandler extends HandlerBase {
                     if (!(o instanceof Group)) return null;
                 }
                 Set<Group> set = (Set<Group>) k1;
-                Map<FlagBitSet, Tristate> map = new CacheMap<>((k2, m2) -> {
-                    if (k2 instanceof FlagBitSet) {
-                        Tristate state = null;
-                        FlagBitSet flags = (FlagBitSet) k2;
-                        for (Group group : set) {
-                            state = this.groupPermCache.get(group).get(flags);
-                            if (state != null) break;
-                        }
-                        if (state == null) state = this.defaultPermCache.get(flags);
-                        m2.put(flags, state);
-                        return state;
-                    } else return null;
+                FlagStateCache cache = new FlagStateCache(flags -> {
+                    Tristate state = null;
+                    for (Group group : set) {
+                        state = this.groupPermCache.get(group).get(flags);
+                        if (state != null) break;
+                    }
+                    if (state == null) state = this.defaultPermCache.get(flags);
+                    return state;
                 });
-                m1.put(set, map);
-                return map;
+                m1.put(set, cache);
+                return cache;
             } else return null;
         });
     }
@@ -761,18 +747,67 @@ public class GroupHandler extends HandlerBase {
 
     @Override
     public EventResult handle(@Nullable User user, FlagBitSet flags, ExtraContext extra) {
-        if (user == null) return EventResult.pass();
-        else {
+        return EventResult.of(handleState(user, flags, extra));
+    }
+
+    @Override
+    public boolean needsContext() {
+        return false;
+    }
+
+    @Override
+    public Tristate handleState(@Nullable User user, FlagBitSet flags, ExtraContext extra) {
+        if (user == null) return Tristate.UNDEFINED;
+        else return getMembership(user).getPermCache().get(flags);
+    }
+
+    @Override
+    public void clearUserCache(UUID user) {
+        this.membershipCache.release(user);
+    }
+
+    @Override
+    public void setName(String name) {
+        super.setName(name);
+        invalidateMemberships();
+    }
+
+    /**
+     * Gets the cached group membership of a user.
+     * Memberships are checked against the permission service again once they expire,
+     * or right away if the groups of this handler have changed since.
+     */
+    private Membership getMembership(User user) {
+        UUID uuid = user.getUniqueId();
+        long now = System.currentTimeMillis();
+        Membership membership = this.membershipCache.get(uuid);
+        if (membership == null || membership.version != this.membershipVersion || now >= membership.expires) {
+            if (this.permissionNodes == null) buildPermissionNodes();
             Set<Group> set = new HashSet<>();
-            for (Group g : this.groups) {
-                if (g.specialPermission) {
-                    if (user.hasPermission(g.permission)) set.add(g);
-                } else {
-                    if (user.hasPermission("foxguard.handler." + this.name.toLowerCase() + "." + g.name)) set.add(g);
-                }
+            for (int i = 0; i < this.permissionNodes.length; i++) {
+                if (user.hasPermission(this.permissionNodes[i])) set.add(this.permissionGroups[i]);
             }
-            return EventResult.of(this.groupSetPermCache.get(set).get(flags));
+            membership = new Membership(set, this.membershipVersion, now + FGConfigManager.getInstance().getPermissionCacheTime());
+            this.membershipCache.put(uuid, membership);
         }
+        return membership;
+    }
+
+    private void buildPermissionNodes() {
+        String prefix = "foxguard.handler." + this.name.toLowerCase() + ".";
+        Group[] groups = this.groups.toArray(new Group[this.groups.size()]);
+        String[] nodes = new String[groups.length];
+        for (int i = 0; i < groups.length; i++) {
+            nodes[i] = groups[i].specialPermission ? groups[i].permission : prefix + groups[i].name;
+        }
+        this.permissionGroups = groups;
+        this.permissionNodes = nodes;
+    }
+
+    private void invalidateMemberships() {
+        this.permissionGroups = null;
+        this.permissionNodes = null;
+        this.membershipVersion++;
     }
 
     @Override
@@ -909,6 +944,7 @@ public class GroupHandler extends HandlerBase {
         Group group = new Group(name);
         this.groups.add(group);
         this.groupPermissions.put(group, new ArrayList<>());
+        invalidateMemberships();
         return Optional.of(group);
     }
 
@@ -929,6 +965,7 @@ public class GroupHandler extends HandlerBase {
         Group group = new Group(name);
         this.groups.add(group);
         this.groupPermissions.put(group, new ArrayList<>());
+        invalidateMemberships();
         return Optional.of(group);
     }
 
@@ -947,14 +984,17 @@ public class GroupHandler extends HandlerBase {
     public boolean removeGroup(Group group) {
         if (this.groups.contains(group)) {
             this.groupPermissions.remove(group);
+            this.compiledGroupPermissions.remove(group);
             this.groupPermCache.remove(group);
             Set<Set<Group>> groupSuperSet = new HashSet<>();
-            for (Map.Entry<Set<Group>, Map<FlagBitSet, Tristate>> entry : this.groupSetPermCache.entrySet()) {
+            for (Map.Entry<Set<Group>, FlagStateCache> entry : this.groupSetPermCache.entrySet()) {
                 Set<Group> key = entry.getKey();
                 if (key.contains(group)) groupSuperSet.add(key);
             }
             groupSuperSet.forEach(this.groupSetPermCache::remove);
+            this.permCacheVersion++;
             this.groups.remove(group);
+            invalidateMemberships();
             return true;
         }
         return false;
@@ -977,11 +1017,12 @@ public class GroupHandler extends HandlerBase {
             if (index > this.groups.size()) index = this.groups.size();
             this.groups.add(index, group);
             Set<Set<Group>> groupSuperSet = new HashSet<>();
-            for (Map.Entry<Set<Group>, Map<FlagBitSet, Tristate>> entry : this.groupSetPermCache.entrySet()) {
+            for (Map.Entry<Set<Group>, FlagStateCache> entry : this.groupSetPermCache.entrySet()) {
                 Set<Group> key = entry.getKey();
                 if (key.contains(group)) groupSuperSet.add(key);
             }
             groupSuperSet.forEach(this.groupSetPermCache::remove);
+            this.permCacheVersion++;
             return true;
         } else return false;
     }
@@ -991,6 +1032,7 @@ public class GroupHandler extends HandlerBase {
         if (this.groups.contains(group)) {
             if (groupExists(newName)) return false;
             group.name = newName.toLowerCase();
+            invalidateMemberships();
             return true;
         } else return false;
     }
@@ -1016,6 +1058,7 @@ public class GroupHandler extends HandlerBase {
         for (Entry groupEntry : groupEntries) {
             if (groupEntry.set.equals(entry.set)) {
                 groupEntry.state = entry.state;
+                clearFlagCacheForGroup(group);
                 return;
             }
         }
@@ -1097,16 +1140,35 @@ public class GroupHandler extends HandlerBase {
 
     private void clearFlagCacheForGroup(Group group) {
         if (group == defaultGroup) {
+            this.compiledDefaultPermissions = null;
             this.defaultPermCache.clear();
         } else {
+            this.compiledGroupPermissions.remove(group);
             this.groupPermCache.get(group).clear();
         }
         Set<Set<Group>> groupSuperSet = new HashSet<>();
-        for (Map.Entry<Set<Group>, Map<FlagBitSet, Tristate>> cacheEntry : this.groupSetPermCache.entrySet()) {
+        for (Map.Entry<Set<Group>, FlagStateCache> cacheEntry : this.groupSetPermCache.entrySet()) {
             Set<Group> key = cacheEntry.getKey();
             if (key.contains(group)) groupSuperSet.add(key);
         }
         groupSuperSet.forEach(this.groupSetPermCache::remove);
+        this.permCacheVersion++;
+    }
+
+    private CompiledEntries getCompiledPermissions(Group group) {
+        if (group == this.defaultGroup) {
+            if (this.compiledDefaultPermissions == null)
+                this.compiledDefaultPermissions = CompiledEntries.compile(this.defaultPermissions);
+            return this.compiledDefaultPermissions;
+        } else {
+            CompiledEntries compiled = this.compiledGroupPermissions.get(group);
+            if (compiled == null) {
+                List<Entry> entries = this.groupPermissions.get(group);
+                compiled = CompiledEntries.compile(entries != null ? entries : ImmutableList.of());
+                this.compiledGroupPermissions.put(group, compiled);
+            }
+            return compiled;
+        }
     }
 
     private List<Entry> getGroupPermissions(Group group) {
@@ -1157,6 +1219,28 @@ public class GroupHandler extends HandlerBase {
         }
     }
 
+    private class Membership {
+        private final Set<Group> groups;
+        private final int version;
+        private final long expires;
+        private FlagStateCache permCache;
+        private int permVersion;
+
+        private Membership(Set<Group> groups, int version, long expires) {
+            this.groups = groups;
+            this.version = version;
+            this.expires = expires;
+        }
+
+        private FlagStateCache getPermCache() {
+            if (permCache == null || permVersion != permCacheVersion) {
+                permCache = groupSetPermCache.get(groups);
+                permVersion = permCacheVersion;
+            }
+            return permCache;
+        }
+    }
+
     public static class Group {
         private String name;
         private String displayName;
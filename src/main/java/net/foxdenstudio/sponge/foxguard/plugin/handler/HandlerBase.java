@@ -25,6 +25,7 @@
 
 package net.foxdenstudio.sponge.foxguard.plugin.handler;
 
+import net.foxdenstudio.sponge.foxguard.plugin.FGManager;
 import net.foxdenstudio.sponge.foxguard.plugin.object.FGObjectBase;
 
 public abstract class HandlerBase extends FGObjectBase implements IHandler {
@@ -33,7 +34,7 @@ public abstract class HandlerBase extends FGObjectBase implements IHandler {
 
     public HandlerBase(String name, boolean isEnabled, int priority) {
         super(name, isEnabled);
-        setPriority(priority);
+        this.priority = clampPriority(priority);
     }
 
     @Override
@@ -43,9 +44,30 @@ public abstract class HandlerBase extends FGObjectBase implements IHandler {
 
     @Override
     public void setPriority(int priority) {
+        this.priority = clampPriority(priority);
+        markModified();
+        markHandlersDirty();
+    }
+
+    @Override
+    public void setIsEnabled(boolean state) {
+        super.setIsEnabled(state);
+        markHandlersDirty();
+    }
+
+    /**
+     * Marks cached handler arrays as stale. Handlers that aren't registered can't be in any of them,
+     * so nothing is invalidated for those.
+     */
+    private void markHandlersDirty() {
+        FGManager manager = FGManager.getInstance();
+        if (manager != null && manager.isRegistered(this)) manager.markHandlersDirty();
+    }
+
+    private static int clampPriority(int priority) {
         if (priority < Integer.MIN_VALUE / 2 + 1) priority = Integer.MIN_VALUE / 2 + 1;
         else if (priority > Integer.MAX_VALUE / 2) priority = Integer.MAX_VALUE / 2;
-        this.priority = priority > Integer.MIN_VALUE ? priority : Integer.MIN_VALUE + 1;
+        return priority > Integer.MIN_VALUE ? priority : Integer.MIN_VALUE + 1;
     }
 
     @Override
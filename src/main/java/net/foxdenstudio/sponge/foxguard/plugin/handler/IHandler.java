@@ -30,15 +30,63 @@ import net.foxdenstudio.sponge.foxguard.plugin.listener.util.EventResult;
 import net.foxdenstudio.sponge.foxguard.plugin.object.IFGObject;
 import net.foxdenstudio.sponge.foxguard.plugin.util.ExtraContext;
 import org.spongepowered.api.entity.living.player.User;
+import org.spongepowered.api.util.Tristate;
 
 import javax.annotation.Nullable;
+import java.util.UUID;
 
 public interface IHandler extends IFGObject, Comparable<IHandler> {
 
     EventResult handle(@Nullable User user, FlagBitSet flags, ExtraContext extra);
 
+    /**
+     * Gets only the state this handler would return for an event, discarding any message.
+     * Used when evaluating handler chains. Handlers that never produce messages should override this
+     * and have {@link #handle(User, FlagBitSet, ExtraContext)} delegate to it.
+     *
+     * @param user  The user that caused the event, or null if there is none.
+     * @param flags The flags of the event.
+     * @param extra The extra context of the event.
+     * @return The resulting state.
+     */
+    default Tristate handleState(@Nullable User user, FlagBitSet flags, ExtraContext extra) {
+        return handle(user, flags, extra).getState();
+    }
+
+    /**
+     * Whether this handler reads the extra context it is given.
+     * Listeners only build the context when a handler in the chain needs it, and pass an empty one otherwise.
+     *
+     * @return Whether this handler needs the extra context.
+     */
+    default boolean needsContext() {
+        return true;
+    }
+
     int getPriority();
 
     void setPriority(int priority);
 
+    /**
+     * Drops anything this handler has cached for a user. Called when the user disconnects.
+     *
+     * @param user The unique id of the user.
+     */
+    default void clearUserCache(UUID user) {
+    }
+
+    /**
+     * Whether the result of this handler only depends on the user and the flags.
+     * Listeners may then reuse a decision for the same user, flags and handlers until FoxGuard's configuration changes,
+     * without calling the handler again.
+     * <p>
+     * A memoizable handler must ignore the extra context, must not send messages or have other side effects,
+     * and must call {@link net.foxdenstudio.sponge.foxguard.plugin.FGManager#markModified(IFGObject)} whenever its own decisions change.
+     *
+     * @return Whether decisions of this handler can be memoized.
+     */
+    default boolean isMemoizable() {
+        return false;
+    }
+
 }
@@ -0,0 +1,102 @@
+/*
+ * This file is part of FoxGuard, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) gravityfox - https://gravityfox.net/
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.foxdenstudio.sponge.foxguard.plugin.handler.util;
+
+import net.foxdenstudio.sponge.foxguard.plugin.flag.Flag;
+import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagBitSet;
+import org.spongepowered.api.util.Tristate;
+
+import java.util.List;
+
+/**
+ * An entry list compiled into packed flag masks.
+ * Matching a flag set against an entry is a handful of AND operations instead of building a set of flags.
+ * <p>
+ * The compiled form is a snapshot. It has to be recompiled whenever the entry list or any entry in it changes.
+ */
+public class CompiledEntries {
+
+    private static final long[] EMPTY_MASK = new long[0];
+
+    private final long[][] masks;
+    private final Tristate[] states;
+
+    private CompiledEntries(long[][] masks, Tristate[] states) {
+        this.masks = masks;
+        this.states = states;
+    }
+
+    public static CompiledEntries compile(List<Entry> entries) {
+        long[][] masks = new long[entries.size()][];
+        Tristate[] states = new Tristate[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            masks[i] = toMask(entry.set);
+            states[i] = entry.state;
+        }
+        return new CompiledEntries(masks, states);
+    }
+
+    /**
+     * Finds the first entry whose flags are all contained in the given flag set.
+     *
+     * @param flags The flags to match against.
+     * @return The state of the first matching entry, or null if no entry matches.
+     */
+    public Tristate match(FlagBitSet flags) {
+        long[] words = flags.toLongArray();
+        for (int i = 0; i < masks.length; i++) {
+            if (containsAll(words, masks[i])) return states[i];
+        }
+        return null;
+    }
+
+    public int size() {
+        return masks.length;
+    }
+
+    private static boolean containsAll(long[] words, long[] mask) {
+        if (mask.length > words.length) return false;
+        for (int i = 0; i < mask.length; i++) {
+            if ((words[i] & mask[i]) != mask[i]) return false;
+        }
+        return true;
+    }
+
+    private static long[] toMask(Iterable<Flag> flags) {
+        long[] mask = EMPTY_MASK;
+        for (Flag flag : flags) {
+            int word = flag.id >>> 6;
+            if (word >= mask.length) {
+                long[] grown = new long[word + 1];
+                System.arraycopy(mask, 0, grown, 0, mask.length);
+                mask = grown;
+            }
+            mask[word] |= 1L << flag.id;
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of FoxGuard, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) gravityfox - https://gravityfox.net/
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.foxdenstudio.sponge.foxguard.plugin.handler.util;
+
+import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagBitSet;
+import net.foxdenstudio.sponge.foxguard.plugin.flag.ImmutableFlagBitSet;
+import org.spongepowered.api.util.Tristate;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * A lazily filled table of flag decisions, indexed by the dense id of each interned flag combination.
+ * Misses are resolved through the loader and remembered until the table is cleared.
+ * The loader may return null, which is cached like any other result.
+ */
+public class FlagStateCache {
+
+    private static final byte UNKNOWN = 0;
+    private static final byte STATE_TRUE = 1;
+    private static final byte STATE_FALSE = 2;
+    private static final byte STATE_UNDEFINED = 3;
+    private static final byte NONE = 4;
+
+    private final Function<ImmutableFlagBitSet, Tristate> loader;
+    private byte[] states = new byte[0];
+
+    public FlagStateCache(Function<ImmutableFlagBitSet, Tristate> loader) {
+        this.loader = loader;
+    }
+
+    public Tristate get(FlagBitSet flags) {
+        ImmutableFlagBitSet key = flags.intern();
+        int id = key.getId();
+        if (id < states.length && states[id] != UNKNOWN) return decode(states[id]);
+        Tristate state = loader.apply(key);
+        if (id >= states.length) {
+            states = Arrays.copyOf(states, Math.max(id + 1, ImmutableFlagBitSet.getIdCount()));
+        }
+        states[id] = encode(state);
+        return state;
+    }
+
+    public void clear() {
+        Arrays.fill(states, UNKNOWN);
+    }
+
+    private static byte encode(Tristate state) {
+        if (state == null) return NONE;
+        switch (state) {
+            case TRUE:
+                return STATE_TRUE;
+            case FALSE:
+                return STATE_FALSE;
+            default:
+                return STATE_UNDEFINED;
+        }
+    }
+
+    private static Tristate decode(byte state) {
+        switch (state) {
+            case STATE_TRUE:
+                return Tristate.TRUE;
+            case STATE_FALSE:
+                return Tristate.FALSE;
+            case STATE_UNDEFINED:
+                return Tristate.UNDEFINED;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * This file is part of FoxGuard, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) gravityfox - https://gravityfox.net/
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.foxdenstudio.sponge.foxguard.plugin.handler.util;
+
+import net.foxdenstudio.sponge.foxguard.plugin.FGConfigManager;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * A per-user cache that keeps at most {@code cache.userCacheSize} entries, dropping the least recently used user first.
+ * Like {@link net.foxdenstudio.sponge.foxcore.plugin.util.CacheMap CacheMap}, missing entries are created by the loader on {@link #get(Object)}.
+ * <p>
+ * When {@code cache.retainOfflineUsers} is enabled, entries of users that disconnect are kept as soft references
+ * and restored if the user comes back before the garbage collector reclaims them.
+ *
+ * @param <V> The type of cached value.
+ */
+public class UserCache<V> extends LinkedHashMap<UUID, V> {
+
+    private final Function<UUID, V> loader;
+    private final Map<UUID, OfflineReference<V>> offline = new HashMap<>();
+    private final ReferenceQueue<V> queue = new ReferenceQueue<>();
+
+    /**
+     * Creates a user cache without a loader. Missing entries are simply returned as null.
+     */
+    public UserCache() {
+        this(null);
+    }
+
+    public UserCache(Function<UUID, V> loader) {
+        super(16, 0.75f, true);
+        this.loader = loader;
+    }
+
+    @Override
+    public V get(Object key) {
+        V value = super.get(key);
+        if (value == null && key instanceof UUID) {
+            UUID user = (UUID) key;
+            expunge();
+            OfflineReference<V> reference = offline.remove(user);
+            if (reference != null) value = reference.get();
+            if (value == null && loader != null) value = loader.apply(user);
+            if (value != null) put(user, value);
+        }
+        return value;
+    }
+
+    @Override
+    public V remove(Object key) {
+        offline.remove(key);
+        return super.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        offline.clear();
+        super.clear();
+    }
+
+    /**
+     * Called when a user disconnects. Their entry is either dropped or kept softly, depending on the configuration.
+     *
+     * @param user The unique id of the user.
+     */
+    public void release(UUID user) {
+        V value = super.remove(user);
+        if (value != null && FGConfigManager.getInstance().retainOfflineUsers()) {
+            expunge();
+            offline.put(user, new OfflineReference<>(user, value, queue));
+        }
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<UUID, V> eldest) {
+        int limit = FGConfigManager.getInstance().getUserCacheSize();
+        return limit > 0 && size() > limit;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expunge() {
+        OfflineReference<V> reference;
+        while ((reference = (OfflineReference<V>) queue.poll()) != null) {
+            offline.remove(reference.user, reference);
+        }
+    }
+
+    private static final class OfflineReference<V> extends SoftReference<V> {
+        private final UUID user;
+
+        private OfflineReference(UUID user, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.user = user;
+        }
+    }
+}
@@ -25,14 +25,14 @@
 
 package net.foxdenstudio.sponge.foxguard.plugin.listener;
 
-import com.flowpowered.math.GenericMath;
 import com.flowpowered.math.vector.Vector3i;
 import net.foxdenstudio.sponge.foxcore.plugin.command.CommandDebug;
+import net.foxdenstudio.sponge.foxguard.plugin.FGConfigManager;
 import net.foxdenstudio.sponge.foxguard.plugin.FGManager;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagBitSet;
+import net.foxdenstudio.sponge.foxguard.plugin.flag.ImmutableFlagBitSet;
 import net.foxdenstudio.sponge.foxguard.plugin.handler.IHandler;
-import net.foxdenstudio.sponge.foxguard.plugin.object.IFGObject;
-import net.foxdenstudio.sponge.foxguard.plugin.util.ExtraContext;
+import net.foxdenstudio.sponge.foxguard.plugin.listener.util.HandlerChain;
 import org.spongepowered.api.block.BlockSnapshot;
 import org.spongepowered.api.block.BlockTypes;
 import org.spongepowered.api.data.Transaction;
@@ -47,15 +47,16 @@ import org.spongepowered.api.world.World;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static net.foxdenstudio.sponge.foxguard.plugin.flag.Flags.*;
 import static org.spongepowered.api.util.Tristate.FALSE;
-import static org.spongepowered.api.util.Tristate.UNDEFINED;
 
 public class BlockListener implements EventListener<ChangeBlockEvent> {
 
-    private static final FlagBitSet BASE_FLAG_SET = new FlagBitSet(ROOT, DEBUFF, BLOCK, CHANGE);
+    private static final ImmutableFlagBitSet BASE_FLAG_SET = new FlagBitSet(ROOT, DEBUFF, BLOCK, CHANGE).intern();
 
     @Override
     public void handle(ChangeBlockEvent event) throws Exception {
@@ -84,76 +85,73 @@ public class BlockListener implements EventListener<ChangeBlockEvent> {
         else if (event instanceof ChangeBlockEvent.Grow) typeFlag = FlagOld.BLOCK_GROW;
         else return;*/
 
-        FlagBitSet flags = (FlagBitSet) BASE_FLAG_SET.clone();
+        ImmutableFlagBitSet flags = BASE_FLAG_SET;
 
-        if (event instanceof ChangeBlockEvent.Modify) flags.set(MODIFY);
-        else if (event instanceof ChangeBlockEvent.Break) flags.set(BREAK);
-        else if (event instanceof ChangeBlockEvent.Place) flags.set(PLACE);
-        else if (event instanceof ChangeBlockEvent.Decay) flags.set(DECAY);
-        else if (event instanceof ChangeBlockEvent.Grow) flags.set(GROW);
-        else if (event instanceof ChangeBlockEvent.Post) flags.set(POST);
+        if (event instanceof ChangeBlockEvent.Modify) flags = flags.with(MODIFY);
+        else if (event instanceof ChangeBlockEvent.Break) flags = flags.with(BREAK);
+        else if (event instanceof ChangeBlockEvent.Place) flags = flags.with(PLACE);
+        else if (event instanceof ChangeBlockEvent.Decay) flags = flags.with(DECAY);
+        else if (event instanceof ChangeBlockEvent.Grow) flags = flags.with(GROW);
+        else if (event instanceof ChangeBlockEvent.Post) flags = flags.with(POST);
 
         //FoxGuardMain.instance().getLogger().info(player.getName());
 
-        List<IHandler> handlerList = new ArrayList<>();
-        handlerList.add(FGManager.getInstance().getGlobalHandler());
         World world = event.getTargetWorld();
+        List<Transaction<BlockSnapshot>> transactions = event.getTransactions();
+        int threshold = FGConfigManager.getInstance().getBlockFilterThreshold();
+        boolean filter = threshold > 0 && transactions.size() >= threshold;
 
-        for (Transaction<BlockSnapshot> trans : event.getTransactions()) {
-            Vector3i loc = trans.getOriginal().getLocation().get().getBlockPosition();
-            Vector3i chunk = new Vector3i(
-                    GenericMath.floor((loc.getX()) / 16.0),
-                    GenericMath.floor((loc.getY()) / 16.0),
-                    GenericMath.floor((loc.getZ()) / 16.0));
-            FGManager.getInstance().getAllRegions(world, chunk).stream()
-                    .filter(region -> region.contains(loc, world))
-                    .forEach(region -> region.getHandlers().stream()
-                            .filter(IFGObject::isEnabled)
-                            .filter(handler -> !handlerList.contains(handler))
-                            .forEach(handlerList::add));
-        }
-        Collections.sort(handlerList);
-        int currPriority = handlerList.get(0).getPriority();
-        Tristate flagState = UNDEFINED;
-        for (IHandler handler : handlerList) {
-            if (handler.getPriority() < currPriority && flagState != UNDEFINED) {
-                break;
+        // Transactions in the same cell almost always share the same cached handler array, so only distinct arrays are kept.
+        List<IHandler[]> handlerSets = new ArrayList<>();
+        int[] setIndexes = filter ? new int[transactions.size()] : null;
+        IHandler[] previous = null;
+        int previousIndex = -1;
+        for (int i = 0; i < transactions.size(); i++) {
+            IHandler[] posHandlers = FGManager.getInstance().getHandlersAtPos(world, transactions.get(i).getOriginal().getPosition());
+            if (posHandlers != previous) {
+                previousIndex = indexOf(handlerSets, posHandlers);
+                if (previousIndex < 0) {
+                    previousIndex = handlerSets.size();
+                    handlerSets.add(posHandlers);
+                }
+                previous = posHandlers;
             }
-            //flagState = flagState.and(handler.handle(user, typeFlag, Optional.of(event)).getState());
-            flagState = flagState.and(handler.handle(user, flags, ExtraContext.of(event)).getState());
-            currPriority = handler.getPriority();
+            if (filter) setIndexes[i] = previousIndex;
         }
-//        if(flagState == UNDEFINED) flagState = TRUE;
 
-        if (flagState == FALSE) {
-            if (user instanceof Player) {
-                if (CommandDebug.instance().getDebug().get(user)) {
-                    Vector3i vec = event.getTransactions().get(0).getOriginal().getPosition();
-                    ((Player) user).sendMessage(Text.of("Block action denied at (" + vec.getX() + ", " + vec.getY() + ", " + vec.getZ() + ")"
-                            + (event.getTransactions().size() > 1 ? " and " + (event.getTransactions().size() - 1) + " other positions" : "") + "!"));
-                } else {
-                    Player player = (Player) user;
-                    Vector3i pos = player.getLocation().getPosition().toInt();
-                    Response r = Response.NONE;
-                    for (Transaction<BlockSnapshot> trans : event.getTransactions()) {
-                        int dist = trans.getOriginal().getPosition().distanceSquared(pos);
-                        if (dist < 64) {
-                            r = Response.BASIC;
-                            break;
-                        }
-                        if (dist < 4096) {
-                            r = Response.LOCATION;
-                            break;
-                        }
+        if (filter && handlerSets.size() > 1) {
+            Tristate[] states = new Tristate[handlerSets.size()];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = HandlerChain.evaluate(handlerSets.get(i), user, flags, event);
+            }
+            List<Transaction<BlockSnapshot>> denied = new ArrayList<>();
+            for (int i = 0; i < transactions.size(); i++) {
+                if (states[setIndexes[i]] == FALSE) denied.add(transactions.get(i));
+            }
+            if (denied.size() < transactions.size()) {
+                if (!denied.isEmpty()) {
+                    for (Transaction<BlockSnapshot> trans : denied) {
+                        trans.setValid(false);
                     }
-                    if (r == Response.BASIC)
-                        player.sendMessage(ChatTypes.ACTION_BAR, Text.of("You don't have permission!"));
-                    else if (r == Response.LOCATION)
-                        player.sendMessage(ChatTypes.ACTION_BAR, Text.of("You don't have permission! " +
-                                event.getTransactions().get(0).getOriginal().getPosition() +
-                                (event.getTransactions().size() > 1 ? "..." : "")));
+                    if (user instanceof Player) sendDeniedMessage((Player) user, denied);
                 }
+                //makes sure that handlers are unable to cancel the event directly.
+                event.setCancelled(false);
+                return;
             }
+            if (user instanceof Player) sendDeniedMessage((Player) user, transactions);
+            event.setCancelled(true);
+            return;
+        }
+
+        // Merged arrays are built for this event only, so they are kept out of the decision memo.
+        Tristate flagState = handlerSets.size() == 1
+                ? HandlerChain.evaluate(handlerSets.get(0), user, flags, event)
+                : HandlerChain.evaluate(union(handlerSets), user, flags, event, false);
+//        if(flagState == UNDEFINED) flagState = TRUE;
+
+        if (flagState == FALSE) {
+            if (user instanceof Player) sendDeniedMessage((Player) user, transactions);
             event.setCancelled(true);
         } else {
             //makes sure that handlers are unable to cancel the event directly.
@@ -161,6 +159,51 @@ public class BlockListener implements EventListener<ChangeBlockEvent> {
         }
     }
 
+    private static void sendDeniedMessage(Player player, List<Transaction<BlockSnapshot>> denied) {
+        if (CommandDebug.instance().getDebug().get(player)) {
+            Vector3i vec = denied.get(0).getOriginal().getPosition();
+            player.sendMessage(Text.of("Block action denied at (" + vec.getX() + ", " + vec.getY() + ", " + vec.getZ() + ")"
+                    + (denied.size() > 1 ? " and " + (denied.size() - 1) + " other positions" : "") + "!"));
+        } else {
+            Vector3i pos = player.getLocation().getPosition().toInt();
+            Response r = Response.NONE;
+            for (Transaction<BlockSnapshot> trans : denied) {
+                int dist = trans.getOriginal().getPosition().distanceSquared(pos);
+                if (dist < 64) {
+                    r = Response.BASIC;
+                    break;
+                }
+                if (dist < 4096) {
+                    r = Response.LOCATION;
+                    break;
+                }
+            }
+            if (r == Response.BASIC)
+                player.sendMessage(ChatTypes.ACTION_BAR, Text.of("You don't have permission!"));
+            else if (r == Response.LOCATION)
+                player.sendMessage(ChatTypes.ACTION_BAR, Text.of("You don't have permission! " +
+                        denied.get(0).getOriginal().getPosition() +
+                        (denied.size() > 1 ? "..." : "")));
+        }
+    }
+
+    private static int indexOf(List<IHandler[]> handlerSets, IHandler[] handlers) {
+        for (int i = 0; i < handlerSets.size(); i++) {
+            if (handlerSets.get(i) == handlers) return i;
+        }
+        return -1;
+    }
+
+    private static IHandler[] union(List<IHandler[]> handlerSets) {
+        Set<IHandler> handlerSet = new HashSet<>();
+        for (IHandler[] handlers : handlerSets) {
+            Collections.addAll(handlerSet, handlers);
+        }
+        List<IHandler> handlerList = new ArrayList<>(handlerSet);
+        Collections.sort(handlerList);
+        return handlerList.toArray(new IHandler[handlerList.size()]);
+    }
+
     private enum Response {
         NONE, BASIC, LOCATION
     }
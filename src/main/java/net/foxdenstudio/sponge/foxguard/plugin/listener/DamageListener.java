@@ -25,19 +25,15 @@
 
 package net.foxdenstudio.sponge.foxguard.plugin.listener;
 
-import com.flowpowered.math.GenericMath;
 import com.flowpowered.math.vector.Vector3d;
-import com.flowpowered.math.vector.Vector3i;
 import net.foxdenstudio.sponge.foxguard.plugin.FGManager;
 import net.foxdenstudio.sponge.foxguard.plugin.FoxGuardMain;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagBitSet;
+import net.foxdenstudio.sponge.foxguard.plugin.flag.ImmutableFlagBitSet;
 import net.foxdenstudio.sponge.foxguard.plugin.handler.IHandler;
-import net.foxdenstudio.sponge.foxguard.plugin.object.IFGObject;
-import net.foxdenstudio.sponge.foxguard.plugin.util.ExtraContext;
+import net.foxdenstudio.sponge.foxguard.plugin.listener.util.EntityFlags;
+import net.foxdenstudio.sponge.foxguard.plugin.listener.util.HandlerChain;
 import org.spongepowered.api.entity.Entity;
-import org.spongepowered.api.entity.living.Agent;
-import org.spongepowered.api.entity.living.Hostile;
-import org.spongepowered.api.entity.living.Human;
 import org.spongepowered.api.entity.living.Living;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.entity.living.player.User;
@@ -50,10 +46,6 @@ import org.spongepowered.api.text.chat.ChatTypes;
 import org.spongepowered.api.util.Tristate;
 import org.spongepowered.api.world.World;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 import static net.foxdenstudio.sponge.foxguard.plugin.flag.Flags.*;
 import static org.spongepowered.api.util.Tristate.*;
 
@@ -62,9 +54,11 @@ import static org.spongepowered.api.util.Tristate.*;
  */
 public class DamageListener implements EventListener<DamageEntityEvent> {
 
-    private static final FlagBitSet BASE_FLAG_SET_SOURCE = new FlagBitSet(ROOT, DEBUFF, DAMAGE, ENTITY);
-    private static final FlagBitSet INVINCIBLE_FLAG_SET = new FlagBitSet(ROOT, BUFF, INVINCIBLE);
-    private static final FlagBitSet UNDYING_FLAG_SET = new FlagBitSet(ROOT, BUFF, INVINCIBLE, UNDYING);
+    private static final ImmutableFlagBitSet BASE_FLAG_SET_SOURCE = new FlagBitSet(ROOT, DEBUFF, DAMAGE, ENTITY).intern();
+    private static final ImmutableFlagBitSet INVINCIBLE_FLAG_SET = new FlagBitSet(ROOT, BUFF, INVINCIBLE).intern();
+    private static final ImmutableFlagBitSet UNDYING_FLAG_SET = new FlagBitSet(ROOT, BUFF, INVINCIBLE, UNDYING).intern();
+    private static final FlagBitSet[] INVINCIBLE_FLAG_SETS = {INVINCIBLE_FLAG_SET};
+    private static final FlagBitSet[] BUFF_FLAG_SETS = {INVINCIBLE_FLAG_SET, UNDYING_FLAG_SET};
 
     @Override
     public void handle(DamageEntityEvent event) throws Exception {
@@ -81,68 +75,29 @@ public class DamageListener implements EventListener<DamageEntityEvent> {
         World world = event.getTargetEntity().getWorld();
         Vector3d loc = event.getTargetEntity().getLocation().getPosition();
         Entity entity = event.getTargetEntity();
-        FlagBitSet flags = (FlagBitSet) BASE_FLAG_SET_SOURCE.clone();
+        ImmutableFlagBitSet flags = BASE_FLAG_SET_SOURCE;
 
-        if (entity instanceof Living) {
-            flags.set(LIVING);
-            if (entity instanceof Agent) {
-                flags.set(MOB);
-                if (entity instanceof Hostile) {
-                    flags.set(HOSTILE);
-                } else if (entity instanceof Human) {
-                    flags.set(HUMAN);
-                } else {
-                    flags.set(PASSIVE);
-                }
-            } else if (entity instanceof Player) {
-                flags.set(PLAYER);
-            }
-        }
+        flags = EntityFlags.with(flags, entity);
 
 
-        List<IHandler> handlerList = new ArrayList<>();
-        final Vector3d finalLoc = loc;
-        final World finalWorld = world;
-        FGManager.getInstance().getAllRegions(world, new Vector3i(
-                GenericMath.floor(loc.getX() / 16.0),
-                GenericMath.floor(loc.getY() / 16.0),
-                GenericMath.floor(loc.getZ() / 16.0))).stream()
-                .filter(region -> region.contains(finalLoc, finalWorld))
-                .forEach(region -> region.getHandlers().stream()
-                        .filter(IFGObject::isEnabled)
-                        .filter(handler -> !handlerList.contains(handler))
-                        .forEach(handlerList::add));
+        IHandler[] handlers = FGManager.getInstance().getHandlersAtPos(world, loc);
+        boolean death = event.willCauseDeath();
 
-        Collections.sort(handlerList);
-        int currPriority;
-        Tristate flagState = UNDEFINED;
-        boolean invincible = false;
+        boolean invincible = false, undying = false;
         if (entity instanceof Player) {
-            currPriority = handlerList.get(0).getPriority();
-            for (IHandler handler : handlerList) {
-                if (handler.getPriority() < currPriority && flagState != UNDEFINED) {
-                    break;
-                }
-                flagState = flagState.and(handler.handle((Player) entity, INVINCIBLE_FLAG_SET, ExtraContext.of(event)).getState());
-                currPriority = handler.getPriority();
-            }
-//            if(flagState == UNDEFINED) flagState = FALSE;
-            if (flagState == TRUE) {
-                invincible = true;
-                flagState = FALSE;
-            }
+            int results = HandlerChain.evaluate(handlers, (Player) entity, death ? BUFF_FLAG_SETS : INVINCIBLE_FLAG_SETS, event);
+            invincible = HandlerChain.getResult(results, 0) == TRUE;
+            undying = death && HandlerChain.getResult(results, 1) == TRUE;
         }
+        Tristate flagState = FALSE, killState = UNDEFINED;
         if (!invincible) {
-            currPriority = handlerList.get(0).getPriority();
-            flagState = UNDEFINED;
-            for (IHandler handler : handlerList) {
-                if (handler.getPriority() < currPriority && flagState != UNDEFINED) {
-                    break;
-                }
-                flagState = flagState.and(handler.handle(user, flags, ExtraContext.of(event)).getState());
-                currPriority = handler.getPriority();
+            if (death) {
+                int results = HandlerChain.evaluate(handlers, user, new FlagBitSet[]{flags, flags.with(KILL)}, event);
+                flagState = HandlerChain.getResult(results, 0);
+                killState = HandlerChain.getResult(results, 1);
+            } else {
+                flagState = HandlerChain.evaluate(handlers, user, flags, event);
             }
-//            if(flagState == UNDEFINED) flagState = TRUE;
         }
         if (flagState == FALSE) {
             if (user instanceof Player && !invincible) {
@@ -150,45 +105,13 @@ public class DamageListener implements EventListener<DamageEntityEvent> {
             }
             event.setCancelled(true);
         } else {
-            if (event.willCauseDeath()) {
-                flags.set(KILL);
-                flagState = UNDEFINED;
-                invincible = false;
-                if (entity instanceof Player) {
-                    currPriority = handlerList.get(0).getPriority();
-                    for (IHandler handler : handlerList) {
-                        if (handler.getPriority() < currPriority && flagState != UNDEFINED) {
-                            break;
-                        }
-                        flagState = flagState.and(handler.handle((Player) entity, UNDYING_FLAG_SET, ExtraContext.of(event)).getState());
-                        currPriority = handler.getPriority();
-                    }
-//                    if(flagState == UNDEFINED) flagState = FALSE;
-                    if (flagState == TRUE) {
-                        invincible = true;
-                        flagState = FALSE;
-                    }
-                }
-                if (!invincible) {
-                    currPriority = handlerList.get(0).getPriority();
-                    flagState = UNDEFINED;
-                    for (IHandler handler : handlerList) {
-                        if (handler.getPriority() < currPriority && flagState != UNDEFINED) {
-                            break;
-                        }
-                        flagState = flagState.and(handler.handle(user, flags, ExtraContext.of(event)).getState());
-                        currPriority = handler.getPriority();
-                    }
-//                    if(flagState == UNDEFINED) flagState = TRUE;
-                }
-                if (flagState == FALSE) {
-                    DamageModifier.Builder builder = DamageModifier.builder();
-                    builder.type(DamageModifierTypes.ABSORPTION);
-                    builder.cause(FoxGuardMain.getCause());
-                    event.setDamage(builder.build(), damage -> ((Living) event.getTargetEntity()).getHealthData().health().get() - damage - 1);
-                    if (user instanceof Player && !invincible)
-                        ((Player) user).sendMessage(ChatTypes.ACTION_BAR, Text.of("You don't have permission to kill!"));
-                }
+            if (death && (undying || killState == FALSE)) {
+                DamageModifier.Builder builder = DamageModifier.builder();
+                builder.type(DamageModifierTypes.ABSORPTION);
+                builder.cause(FoxGuardMain.getCause());
+                event.setDamage(builder.build(), damage -> ((Living) event.getTargetEntity()).getHealthData().health().get() - damage - 1);
+                if (user instanceof Player && !undying)
+                    ((Player) user).sendMessage(ChatTypes.ACTION_BAR, Text.of("You don't have permission to kill!"));
             }
             //makes sure that handlers are unable to cancel the event directly.
             event.setCancelled(false);
@@ -25,14 +25,13 @@
 
 package net.foxdenstudio.sponge.foxguard.plugin.listener;
 
-import com.flowpowered.math.GenericMath;
 import com.flowpowered.math.vector.Vector3d;
-import com.flowpowered.math.vector.Vector3i;
+import net.foxdenstudio.sponge.foxguard.plugin.FGConfigManager;
 import net.foxdenstudio.sponge.foxguard.plugin.FGManager;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagBitSet;
+import net.foxdenstudio.sponge.foxguard.plugin.flag.ImmutableFlagBitSet;
 import net.foxdenstudio.sponge.foxguard.plugin.handler.IHandler;
-import net.foxdenstudio.sponge.foxguard.plugin.object.IFGObject;
-import net.foxdenstudio.sponge.foxguard.plugin.util.ExtraContext;
+import net.foxdenstudio.sponge.foxguard.plugin.listener.util.HandlerChain;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.entity.living.player.User;
 import org.spongepowered.api.event.EventListener;
@@ -43,14 +42,13 @@ import org.spongepowered.api.util.Tristate;
 import org.spongepowered.api.world.World;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import static net.foxdenstudio.sponge.foxguard.plugin.flag.Flags.*;
 
 public class ExplosionListener implements EventListener<ExplosionEvent.Detonate> {
 
-    private static final FlagBitSet FLAG_SET = new FlagBitSet(ROOT, DEBUFF, EXPLOSION);
+    private static final ImmutableFlagBitSet FLAG_SET = new FlagBitSet(ROOT, DEBUFF, EXPLOSION).intern();
 
 
     @Override
@@ -67,37 +65,41 @@ public class ExplosionListener implements EventListener<ExplosionEvent.Detonate>
 
         World world = event.getTargetWorld();
         Vector3d loc = event.getExplosion().getOrigin();
-        FlagBitSet flags = (FlagBitSet) FLAG_SET.clone();
-        List<IHandler> handlerList = new ArrayList<>();
-        final Vector3d finalLoc = loc;
-        final World finalWorld = world;
-        FGManager.getInstance().getAllRegions(world, new Vector3i(
-                GenericMath.floor(loc.getX() / 16.0),
-                GenericMath.floor(loc.getY() / 16.0),
-                GenericMath.floor(loc.getZ() / 16.0))).stream()
-                .filter(region -> region.contains(finalLoc, finalWorld))
-                .forEach(region -> region.getHandlers().stream()
-                        .filter(IFGObject::isEnabled)
-                        .filter(handler -> !handlerList.contains(handler))
-                        .forEach(handlerList::add));
+        ImmutableFlagBitSet flags = FLAG_SET;
+        IHandler[] handlers = FGManager.getInstance().getHandlersAtPos(world, loc);
 
-        Collections.sort(handlerList);
-        int currPriority = handlerList.get(0).getPriority();
-        Tristate flagState = Tristate.UNDEFINED;
-        for (IHandler handler : handlerList) {
-            if (handler.getPriority() < currPriority && flagState != Tristate.UNDEFINED) {
-                break;
-            }
-            flagState = flagState.and(handler.handle(user, flags, ExtraContext.of(event)).getState());
-            currPriority = handler.getPriority();
-        }
+        Tristate flagState = HandlerChain.evaluate(handlers, user, flags, event);
         if (flagState == Tristate.FALSE) {
             if (user instanceof Player)
                 ((Player) user).sendMessage(ChatTypes.ACTION_BAR, Text.of("You don't have permission!"));
             event.setCancelled(true);
         } else {
+            if (FGConfigManager.getInstance().filterExplosionBlocks()) filterBlocks(event, world, user, flags, handlers, flagState);
             //makes sure that handlers are unable to cancel the event directly.
             event.setCancelled(false);
         }
     }
+
+    /**
+     * Removes every affected location where the explosion is denied.
+     * Neighbouring blocks share the same cached handler array, so each distinct array is only evaluated once.
+     */
+    private static void filterBlocks(ExplosionEvent.Detonate event, World world, User user, FlagBitSet flags,
+                                     IHandler[] originHandlers, Tristate originState) {
+        if (event.getAffectedLocations().isEmpty()) return;
+        List<IHandler[]> handlerSets = new ArrayList<>();
+        List<Tristate> states = new ArrayList<>();
+        handlerSets.add(originHandlers);
+        states.add(originState);
+        event.filterAffectedLocations(location -> {
+            IHandler[] handlers = FGManager.getInstance().getHandlersAtPos(world, location.getBlockX(), location.getBlockY(), location.getBlockZ());
+            for (int i = 0; i < handlerSets.size(); i++) {
+                if (handlerSets.get(i) == handlers) return states.get(i) != Tristate.FALSE;
+            }
+            Tristate state = HandlerChain.evaluate(handlers, user, flags, event);
+            handlerSets.add(handlers);
+            states.add(state);
+            return state != Tristate.FALSE;
+        });
+    }
 }
@@ -25,13 +25,12 @@
 
 package net.foxdenstudio.sponge.foxguard.plugin.listener;
 
-import com.flowpowered.math.GenericMath;
 import com.flowpowered.math.vector.Vector3i;
 import net.foxdenstudio.sponge.foxguard.plugin.FGManager;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagBitSet;
+import net.foxdenstudio.sponge.foxguard.plugin.flag.ImmutableFlagBitSet;
 import net.foxdenstudio.sponge.foxguard.plugin.handler.IHandler;
-import net.foxdenstudio.sponge.foxguard.plugin.object.IFGObject;
-import net.foxdenstudio.sponge.foxguard.plugin.util.ExtraContext;
+import net.foxdenstudio.sponge.foxguard.plugin.listener.util.HandlerChain;
 import org.spongepowered.api.block.BlockSnapshot;
 import org.spongepowered.api.block.BlockTypes;
 import org.spongepowered.api.entity.living.player.Player;
@@ -43,17 +42,12 @@ import org.spongepowered.api.text.chat.ChatTypes;
 import org.spongepowered.api.util.Tristate;
 import org.spongepowered.api.world.World;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 import static net.foxdenstudio.sponge.foxguard.plugin.flag.Flags.*;
 import static org.spongepowered.api.util.Tristate.FALSE;
-import static org.spongepowered.api.util.Tristate.UNDEFINED;
 
 public class InteractBlockListener implements EventListener<InteractBlockEvent> {
 
-    private static final FlagBitSet BASE_FLAG_SET = new FlagBitSet(ROOT, DEBUFF, INTERACT, BLOCK);
+    private static final ImmutableFlagBitSet BASE_FLAG_SET = new FlagBitSet(ROOT, DEBUFF, INTERACT, BLOCK).intern();
 
     @Override
     public void handle(InteractBlockEvent event) throws Exception {
@@ -67,38 +61,18 @@ public class InteractBlockListener implements EventListener<InteractBlockEvent>
             user = null;
         }
 
-        FlagBitSet flags = (FlagBitSet) BASE_FLAG_SET.clone();
+        ImmutableFlagBitSet flags = BASE_FLAG_SET;
         BlockSnapshot block = event.getTargetBlock();
         if (block.getState().getType().equals(BlockTypes.AIR)) return;
         World world = block.getLocation().get().getExtent();
         Vector3i loc = block.getPosition();
-        if (event instanceof InteractBlockEvent.Primary) flags.set(PRIMARY);
-        else if (event instanceof InteractBlockEvent.Secondary) flags.set(SECONDARY);
+        if (event instanceof InteractBlockEvent.Primary) flags = flags.with(PRIMARY);
+        else if (event instanceof InteractBlockEvent.Secondary) flags = flags.with(SECONDARY);
 
 
-        List<IHandler> handlerList = new ArrayList<>();
-        Vector3i chunk = new Vector3i(
-                GenericMath.floor(loc.getX() / 16.0),
-                GenericMath.floor(loc.getY() / 16.0),
-                GenericMath.floor(loc.getZ() / 16.0));
-        FGManager.getInstance().getAllRegions(world, chunk).stream()
-                .filter(region -> region.contains(loc, world))
-                .forEach(region -> region.getHandlers().stream()
-                        .filter(IFGObject::isEnabled)
-                        .filter(handler -> !handlerList.contains(handler))
-                        .forEach(handlerList::add));
+        IHandler[] handlers = FGManager.getInstance().getHandlersAtPos(world, loc);
 
-        Collections.sort(handlerList);
-        int currPriority = handlerList.get(0).getPriority();
-        Tristate flagState = UNDEFINED;
-        for (IHandler handler : handlerList) {
-            if (handler.getPriority() < currPriority && flagState != UNDEFINED) {
-                break;
-            }
-            //flagState = flagState.and(handler.handle(user, typeFlag, Optional.of(event)).getState());
-            flagState = flagState.and(handler.handle(user, flags, ExtraContext.of(event)).getState());
-            currPriority = handler.getPriority();
-        }
+        Tristate flagState = HandlerChain.evaluate(handlers, user, flags, event);
 //        if (flagState == UNDEFINED) flagState = TRUE;
         if (flagState == FALSE) {
             if (user instanceof Player)
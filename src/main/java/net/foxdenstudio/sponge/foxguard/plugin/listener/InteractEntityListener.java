@@ -25,19 +25,14 @@
 
 package net.foxdenstudio.sponge.foxguard.plugin.listener;
 
-import com.flowpowered.math.GenericMath;
 import com.flowpowered.math.vector.Vector3d;
-import com.flowpowered.math.vector.Vector3i;
 import net.foxdenstudio.sponge.foxguard.plugin.FGManager;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagBitSet;
+import net.foxdenstudio.sponge.foxguard.plugin.flag.ImmutableFlagBitSet;
 import net.foxdenstudio.sponge.foxguard.plugin.handler.IHandler;
-import net.foxdenstudio.sponge.foxguard.plugin.object.IFGObject;
-import net.foxdenstudio.sponge.foxguard.plugin.util.ExtraContext;
+import net.foxdenstudio.sponge.foxguard.plugin.listener.util.EntityFlags;
+import net.foxdenstudio.sponge.foxguard.plugin.listener.util.HandlerChain;
 import org.spongepowered.api.entity.Entity;
-import org.spongepowered.api.entity.living.Agent;
-import org.spongepowered.api.entity.living.Hostile;
-import org.spongepowered.api.entity.living.Human;
-import org.spongepowered.api.entity.living.Living;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.entity.living.player.User;
 import org.spongepowered.api.event.EventListener;
@@ -48,16 +43,13 @@ import org.spongepowered.api.util.Tristate;
 import org.spongepowered.api.world.World;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 
 import static net.foxdenstudio.sponge.foxguard.plugin.flag.Flags.*;
 import static org.spongepowered.api.util.Tristate.FALSE;
-import static org.spongepowered.api.util.Tristate.UNDEFINED;
 
 public class InteractEntityListener implements EventListener<InteractEntityEvent> {
 
-    private static final FlagBitSet BASE_FLAG_SET = new FlagBitSet(ROOT, DEBUFF, INTERACT, ENTITY);
+    private static final ImmutableFlagBitSet BASE_FLAG_SET = new FlagBitSet(ROOT, DEBUFF, INTERACT, ENTITY).intern();
 
     @Override
     public void handle(InteractEntityEvent event) throws Exception {
@@ -71,55 +63,20 @@ public class InteractEntityListener implements EventListener<InteractEntityEvent
             user = null;
         }
 
-        FlagBitSet flags = (FlagBitSet) BASE_FLAG_SET.clone();
+        ImmutableFlagBitSet flags = BASE_FLAG_SET;
         World world = event.getTargetEntity().getWorld();
         Vector3d loc = event.getTargetEntity().getLocation().getPosition();
         if (event instanceof InteractEntityEvent.Primary) {
-            flags.set(PRIMARY);
+            flags = flags.with(PRIMARY);
         } else if (event instanceof InteractEntityEvent.Secondary) {
-            flags.set(SECONDARY);
+            flags = flags.with(SECONDARY);
         }
         Entity entity = event.getTargetEntity();
-        if (entity instanceof Living) {
-            flags.set(LIVING);
-            if (entity instanceof Agent) {
-                flags.set(MOB);
-                if (entity instanceof Hostile) {
-                    flags.set(HOSTILE);
-                } else if (entity instanceof Human) {
-                    flags.set(HUMAN);
-                } else {
-                    flags.set(PASSIVE);
-                }
-            } else if (entity instanceof Player) {
-                flags.set(PLAYER);
-            }
+        flags = EntityFlags.with(flags, entity);
 
-        }
-
-        List<IHandler> handlerList = new ArrayList<>();
-        Vector3i chunk = new Vector3i(
-                GenericMath.floor(loc.getX() / 16.0),
-                GenericMath.floor(loc.getY() / 16.0),
-                GenericMath.floor(loc.getZ() / 16.0));
-        FGManager.getInstance().getAllRegions(world, chunk).stream()
-                .filter(region -> region.contains(loc, world))
-                .forEach(region -> region.getHandlers().stream()
-                        .filter(IFGObject::isEnabled)
-                        .filter(handler -> !handlerList.contains(handler))
-                        .forEach(handlerList::add));
+        IHandler[] handlers = FGManager.getInstance().getHandlersAtPos(world, loc);
 
-        Collections.sort(handlerList);
-        int currPriority = handlerList.get(0).getPriority();
-        Tristate flagState = UNDEFINED;
-        for (IHandler handler : handlerList) {
-            if (handler.getPriority() < currPriority && flagState != UNDEFINED) {
-                break;
-            }
-            //flagState = flagState.and(handler.handle(user, typeFlag, Optional.of(event)).getState());
-            flagState = flagState.and(handler.handle(user, flags, ExtraContext.of(event)).getState());
-            currPriority = handler.getPriority();
-        }
+        Tristate flagState = HandlerChain.evaluate(handlers, user, flags, event);
 //        if(flagState == UNDEFINED) flagState = TRUE;
         if (flagState == FALSE) {
             if (user instanceof Player)
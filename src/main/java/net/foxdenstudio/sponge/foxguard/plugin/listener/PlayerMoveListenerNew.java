@@ -27,17 +27,16 @@ package net.foxdenstudio.sponge.foxguard.plugin.listener;
 
 import com.flowpowered.math.GenericMath;
 import com.flowpowered.math.vector.Vector3d;
-import com.flowpowered.math.vector.Vector3i;
 import com.google.common.collect.ImmutableList;
 import net.foxdenstudio.sponge.foxcore.plugin.command.CommandHUD;
 import net.foxdenstudio.sponge.foxcore.plugin.util.CacheMap;
 import net.foxdenstudio.sponge.foxguard.plugin.FGManager;
-import net.foxdenstudio.sponge.foxguard.plugin.event.FGUpdateEvent;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagBitSet;
+import net.foxdenstudio.sponge.foxguard.plugin.flag.ImmutableFlagBitSet;
 import net.foxdenstudio.sponge.foxguard.plugin.handler.IHandler;
+import net.foxdenstudio.sponge.foxguard.plugin.listener.util.HandlerChain;
 import net.foxdenstudio.sponge.foxguard.plugin.object.IFGObject;
 import net.foxdenstudio.sponge.foxguard.plugin.region.IRegion;
-import net.foxdenstudio.sponge.foxguard.plugin.util.ExtraContext;
 import net.foxdenstudio.sponge.foxguard.plugin.util.FGUtil;
 import org.spongepowered.api.entity.Entity;
 import org.spongepowered.api.entity.living.player.Player;
@@ -45,7 +44,6 @@ import org.spongepowered.api.event.EventListener;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.entity.DisplaceEntityEvent;
 import org.spongepowered.api.event.network.ClientConnectionEvent;
-import org.spongepowered.api.scoreboard.Score;
 import org.spongepowered.api.scoreboard.Scoreboard;
 import org.spongepowered.api.scoreboard.critieria.Criteria;
 import org.spongepowered.api.scoreboard.displayslot.DisplaySlots;
@@ -66,9 +64,9 @@ import static net.foxdenstudio.sponge.foxguard.plugin.flag.Flags.*;
  */
 public class PlayerMoveListenerNew implements EventListener<DisplaceEntityEvent> {
 
-    private static final FlagBitSet ENTER_FLAG_SET = new FlagBitSet(ROOT, DEBUFF, PASS, ENTER);
-    private static final FlagBitSet EXIT_FLAG_SET = new FlagBitSet(ROOT, DEBUFF, PASS, EXIT);
-    private static final LastWrapper EMPTY_LAST_WRAPPER = new LastWrapper(null, null);
+    private static final ImmutableFlagBitSet ENTER_FLAG_SET = new FlagBitSet(ROOT, DEBUFF, PASS, ENTER).intern();
+    private static final ImmutableFlagBitSet EXIT_FLAG_SET = new FlagBitSet(ROOT, DEBUFF, PASS, EXIT).intern();
+    private static final LastWrapper EMPTY_LAST_WRAPPER = new LastWrapper(null, null, 0);
 
     private static PlayerMoveListenerNew instance;
 
@@ -86,6 +84,7 @@ public class PlayerMoveListenerNew implements EventListener<DisplaceEntityEvent>
         } else return null;
     });
     private final Map<Player, HUDConfig> hudConfigMap = new CacheMap<>((k, m) -> new HUDConfig());
+    private final Map<Player, HUDState> hudStateMap = new HashMap<>();
 
     public PlayerMoveListenerNew(boolean full) {
         this.full = full;
@@ -105,20 +104,28 @@ public class PlayerMoveListenerNew implements EventListener<DisplaceEntityEvent>
                 .map(entity -> (Player) entity)
                 .forEach(player -> {
                     final boolean hud = CommandHUD.instance().getIsHUDEnabled().get(player) && player.getScoreboard() == scoreboardMap.get(player);
+                    // Forget what was last shown while the HUD is off, so it is drawn in full once it is turned back on.
+                    if (!hud) this.hudStateMap.remove(player);
                     final HUDConfig config = this.hudConfigMap.get(player);
                     final boolean regionHUD = hud && config.regions;
 
-                    List<IHandler> fromList = last.get(player).list, toList = new ArrayList<>();
+                    final int epoch = FGManager.getInstance().getEpoch();
+                    final LastWrapper lastWrapper = last.get(player);
+                    List<IHandler> fromList = lastWrapper.epoch == epoch ? lastWrapper.list : null, toList = new ArrayList<>();
                     List<IRegion> regionList = new ArrayList<>();
                     Vector3d to = event.getToTransform().getPosition().add(0, 0.1, 0);
+                    final int toX = GenericMath.floor(to.getX()), toY = GenericMath.floor(to.getY()), toZ = GenericMath.floor(to.getZ());
+                    // Without a HUD to keep current, nothing can change while the player stays where the same regions apply.
+                    // The position is still tracked so a denied move later on sends the player back to where they just were.
+                    if (!hud && lastWrapper.epoch == epoch && lastWrapper.isInside(world, toX, toY, toZ)) {
+                        lastWrapper.position = event.getToTransform().getPosition();
+                        return;
+                    }
                     if (fromList == null) {
                         fromList = new ArrayList<>();
                         final List<IHandler> temp = fromList;
                         Vector3d from = event.getFromTransform().getPosition().add(0, 0.1, 0);
-                        FGManager.getInstance().getAllRegions(world, new Vector3i(
-                                GenericMath.floor(from.getX() / 16.0),
-                                GenericMath.floor(from.getY() / 16.0),
-                                GenericMath.floor(from.getZ() / 16.0))).stream()
+                        FGManager.getInstance().getRegionsAtPos(world, from.getX(), from.getY(), from.getZ(), false).stream()
                                 .filter(region -> region.contains(from, world))
                                 .forEach(region -> region.getHandlers().stream()
                                         .filter(IFGObject::isEnabled)
@@ -127,10 +134,7 @@ public class PlayerMoveListenerNew implements EventListener<DisplaceEntityEvent>
                     } else {
                         fromList = new ArrayList<>(fromList);
                     }
-                    FGManager.getInstance().getAllRegions(world, new Vector3i(
-                            GenericMath.floor(to.getX() / 16.0),
-                            GenericMath.floor(to.getY() / 16.0),
-                            GenericMath.floor(to.getZ() / 16.0))).stream()
+                    FGManager.getInstance().getRegionsAtPos(world, to.getX(), to.getY(), to.getZ(), false).stream()
                             .filter(region -> region.contains(to, world))
                             .forEach(region -> {
                                 if (regionHUD) regionList.add(region);
@@ -149,60 +153,50 @@ public class PlayerMoveListenerNew implements EventListener<DisplaceEntityEvent>
                                 temp.remove(handler);
                                 toList.remove(handler);
                             });
-                    List<HandlerWrapper> finalList = new ArrayList<>();
-                    fromList.stream()
-                            .map(handler -> new HandlerWrapper(handler, Type.FROM))
-                            .forEach(finalList::add);
-                    toList.stream()
-                            .map(handler -> new HandlerWrapper(handler, Type.TO))
-                            .forEach(finalList::add);
-
-                    if (finalList.size() == 0) {
-                        this.last.put(player, new LastWrapper(toComplete, event.getToTransform().getPosition()));
+                    if (fromList.isEmpty() && toList.isEmpty()) {
+                        this.last.put(player, new LastWrapper(toComplete, event.getToTransform().getPosition(), epoch, world, toX, toY, toZ));
                         return;
                     }
 
                     if (full) {
-                        Collections.sort(finalList);
-                        int currPriority = finalList.get(0).handler.getPriority();
-                        Tristate flagState = Tristate.UNDEFINED;
-                        for (HandlerWrapper wrap : finalList) {
-                            if (wrap.handler.getPriority() < currPriority && flagState != Tristate.UNDEFINED) {
-                                break;
-                            }
-                            if (wrap.type == Type.FROM) {
-                                flagState = flagState.and(wrap.handler.handle(player, (FlagBitSet) EXIT_FLAG_SET.clone(), ExtraContext.of(event)).getState());
-                            } else {
-                                flagState = flagState.and(wrap.handler.handle(player, (FlagBitSet) ENTER_FLAG_SET.clone(), ExtraContext.of(event)).getState());
-                            }
-                            currPriority = wrap.handler.getPriority();
-                        }
+                        Collections.sort(fromList);
+                        Collections.sort(toList);
+                        Tristate flagState = HandlerChain.evaluate(
+                                fromList.toArray(new IHandler[fromList.size()]), EXIT_FLAG_SET,
+                                toList.toArray(new IHandler[toList.size()]), ENTER_FLAG_SET,
+                                player, event);
 
                         if (flagState == Tristate.FALSE) {
                             player.sendMessage(ChatTypes.ACTION_BAR, Text.of("You don't have permission to pass!"));
-                            Vector3d position = this.last.get(player).position;
+                            Vector3d position = lastWrapper.position;
                             if (position == null) position = event.getFromTransform().getPosition();
                             event.setToTransform(event.getToTransform().setPosition(position));
                         } else {
-                            this.last.put(player, new LastWrapper(toComplete, event.getToTransform().getPosition()));
+                            this.last.put(player, new LastWrapper(toComplete, event.getToTransform().getPosition(), epoch, world, toX, toY, toZ));
                             //makes sure that handlers are unable to cancel the event directly.
                             event.setCancelled(false);
-                            if (hud) {
-                                renderHUD(player, regionList, toComplete, config);
-                                player.setScoreboard(this.scoreboardMap.get(player));
-                            }
+                            if (hud) renderHUD(player, regionList, toComplete, config);
                         }
                     } else if (hud) {
                         renderHUD(player, regionList, toComplete, config);
-                        player.setScoreboard(this.scoreboardMap.get(player));
                     }
                 });
     }
 
+    /**
+     * Renders the HUD of a player. Only the differences from the last rendered HUD are sent,
+     * and nothing is done at all if the regions, handlers and configuration are the same as last time.
+     *
+     * @param player   The player to render the HUD for.
+     * @param regions  The regions at the player's position. This list may be sorted.
+     * @param handlers The handlers at the player's position. This list may be sorted.
+     * @param config   The HUD configuration.
+     */
     public void renderHUD(Player player, List<IRegion> regions, List<IHandler> handlers, HUDConfig config) {
-        this.scoreboardMap.remove(player);
-        Scoreboard scoreboard = this.scoreboardMap.get(player);
-        Objective objective = scoreboard.getObjective("foxguardhere").get();
+        HUDState previous = this.hudStateMap.get(player);
+        HUDState state = new HUDState(regions, handlers, config, player.getWorld(), FGManager.getInstance().getEpoch());
+        if (state.equals(previous)) return;
+        Map<Text, Integer> lines = state.lines;
         if (config.regions) {
             Collections.sort(regions, (o1, o2) -> o1.getName().compareToIgnoreCase(o2.getName()));
             if (config.handlers) {
@@ -211,60 +205,66 @@ public class PlayerMoveListenerNew implements EventListener<DisplaceEntityEvent>
                 } else {
                     Collections.sort(handlers, (o1, o2) -> o1.getName().compareToIgnoreCase(o2.getName()));
                 }
-                objective.setDisplayName(Text.of(TextColors.GOLD, "  Regions and Handlers Here  "));
+                state.displayName = Text.of(TextColors.GOLD, "  Regions and Handlers Here  ");
                 final int total = regions.size() + handlers.size();
                 final int regionCount = (int) Math.round(13.0 * regions.size() / total);
                 final int handlerCount = (int) Math.round(13.0 * handlers.size() / total);
                 int slot = Math.min(15, total + 2);
-                Score regionsScore = objective.getOrCreateScore(Text.of(TextColors.GREEN, "Regions (" + player.getWorld().getName() + ") ",
-                        TextColors.YELLOW, "(" + regions.size() + ")"));
-                regionsScore.setScore(slot--);
+                lines.put(Text.of(TextColors.GREEN, "Regions (" + player.getWorld().getName() + ") ",
+                        TextColors.YELLOW, "(" + regions.size() + ")"), slot--);
                 for (int i = 0; i < regionCount && i < regions.size(); i++) {
                     IRegion region = regions.get(i);
-                    Score score = objective.getOrCreateScore(Text.of(FGUtil.getColorForObject(region),
-                            "  " + FGUtil.getRegionName(region, false)));
-                    score.setScore(slot--);
+                    lines.put(Text.of(FGUtil.getColorForObject(region),
+                            "  " + FGUtil.getRegionName(region, false)), slot--);
                 }
-                Score handlersScore = objective.getOrCreateScore(Text.of(TextColors.GREEN, "Handlers " + (config.priority ? "by Priority " : ""),
-                        TextColors.YELLOW, "(" + handlers.size() + ")"));
-                handlersScore.setScore(slot--);
+                lines.put(Text.of(TextColors.GREEN, "Handlers " + (config.priority ? "by Priority " : ""),
+                        TextColors.YELLOW, "(" + handlers.size() + ")"), slot--);
                 for (int i = 0; i < handlerCount && i < handlers.size(); i++) {
                     IHandler handler = handlers.get(i);
-                    Score score = objective.getOrCreateScore(Text.of(FGUtil.getColorForObject(handler),
-                            "  " + handler.getShortTypeName() + " : " + handler.getName()));
-                    score.setScore(slot--);
+                    lines.put(Text.of(FGUtil.getColorForObject(handler),
+                            "  " + handler.getShortTypeName() + " : " + handler.getName()), slot--);
                 }
 
             } else {
                 int slot = regions.size();
-                objective.setDisplayName(Text.of(TextColors.GOLD, "  Regions Here (" + player.getWorld().getName() + ")  "));
+                state.displayName = Text.of(TextColors.GOLD, "  Regions Here (" + player.getWorld().getName() + ")  ");
                 for (IRegion region : regions) {
-                    Score score = objective.getOrCreateScore(Text.of(FGUtil.getColorForObject(region),
-                            "  " + FGUtil.getRegionName(region, false)));
-                    score.setScore(slot--);
+                    lines.put(Text.of(FGUtil.getColorForObject(region),
+                            "  " + FGUtil.getRegionName(region, false)), slot--);
                     if (slot <= 0) break;
                 }
             }
         } else if (config.handlers) {
             if (config.priority) {
-                objective.setDisplayName(Text.of(TextColors.GOLD, "  Handlers Here by Priority  "));
+                state.displayName = Text.of(TextColors.GOLD, "  Handlers Here by Priority  ");
                 for (IHandler handler : handlers) {
-                    Score score = objective.getOrCreateScore(Text.of(FGUtil.getColorForObject(handler),
-                            "  " + handler.getShortTypeName() + " : " + handler.getName()));
-                    score.setScore(handler.getPriority());
+                    lines.put(Text.of(FGUtil.getColorForObject(handler),
+                            "  " + handler.getShortTypeName() + " : " + handler.getName()), handler.getPriority());
                 }
             } else {
                 int slot = handlers.size();
-                objective.setDisplayName(Text.of(TextColors.GOLD, "  Handlers Here  "));
+                state.displayName = Text.of(TextColors.GOLD, "  Handlers Here  ");
                 Collections.sort(handlers, (o1, o2) -> o1.getName().compareToIgnoreCase(o2.getName()));
                 for (IHandler handler : handlers) {
-                    Score score = objective.getOrCreateScore(Text.of(FGUtil.getColorForObject(handler),
-                            "  " + handler.getShortTypeName() + " : " + handler.getName()));
-                    score.setScore(slot--);
+                    lines.put(Text.of(FGUtil.getColorForObject(handler),
+                            "  " + handler.getShortTypeName() + " : " + handler.getName()), slot--);
                     if (slot <= 0) break;
                 }
             }
         }
+
+        Objective objective = this.scoreboardMap.get(player).getObjective("foxguardhere").get();
+        Map<Text, Integer> previousLines = previous == null ? Collections.emptyMap() : previous.lines;
+        if (previous == null || !state.displayName.equals(previous.displayName))
+            objective.setDisplayName(state.displayName);
+        for (Text line : previousLines.keySet()) {
+            if (!lines.containsKey(line)) objective.removeScore(line);
+        }
+        for (Map.Entry<Text, Integer> entry : lines.entrySet()) {
+            if (!entry.getValue().equals(previousLines.get(entry.getKey())))
+                objective.getOrCreateScore(entry.getKey()).setScore(entry.getValue());
+        }
+        this.hudStateMap.put(player, state);
     }
 
     public Map<Player, HUDConfig> getHudConfigMap() {
@@ -288,38 +288,77 @@ public class PlayerMoveListenerNew implements EventListener<DisplaceEntityEvent>
         return set;
     }
 
-    private enum Type {
-        FROM, TO
-    }
-
-    private class HandlerWrapper implements Comparable<HandlerWrapper> {
-        public IHandler handler;
-        public Type type;
+    private static class LastWrapper {
+        public List<IHandler> list;
+        public Vector3d position;
+        public int epoch;
+        public World world;
+        public int[] box;
 
-        public HandlerWrapper(IHandler handler, Type type) {
-            this.handler = handler;
-            this.type = type;
+        public LastWrapper(List<IHandler> list, Vector3d position, int epoch) {
+            this.list = list;
+            this.position = position;
+            this.epoch = epoch;
         }
 
-        @Override
-        public int compareTo(HandlerWrapper w) {
-            int val = handler.compareTo(w.handler);
-            return val != 0 ? val : type.compareTo(w.type);
+        public LastWrapper(List<IHandler> list, Vector3d position, int epoch, World world, int x, int y, int z) {
+            this(list, position, epoch);
+            int[] box = new int[6];
+            if (FGManager.getInstance().getUniformBox(world, x, y, z, box)) {
+                this.world = world;
+                this.box = box;
+            }
         }
 
-        @Override
-        public String toString() {
-            return this.type + ":" + this.handler;
+        public boolean isInside(World world, int x, int y, int z) {
+            return box != null && world == this.world
+                    && x >= box[0] && y >= box[1] && z >= box[2]
+                    && x <= box[3] && y <= box[4] && z <= box[5];
         }
     }
 
-    private static class LastWrapper {
-        public List<IHandler> list;
-        public Vector3d position;
+    /**
+     * What was last rendered on a player's HUD, and what it was rendered from.
+     * Two states are equal if they were rendered from the same inputs.
+     */
+    private static class HUDState {
+        private final Set<IRegion> regions;
+        private final Set<IHandler> handlers;
+        private final boolean showRegions;
+        private final boolean showHandlers;
+        private final boolean priority;
+        private final World world;
+        private final int epoch;
+        private final Map<Text, Integer> lines = new LinkedHashMap<>();
+        private Text displayName = Text.EMPTY;
+
+        private HUDState(List<IRegion> regions, List<IHandler> handlers, HUDConfig config, World world, int epoch) {
+            this.regions = new HashSet<>(regions);
+            this.handlers = new HashSet<>(handlers);
+            this.showRegions = config.regions;
+            this.showHandlers = config.handlers;
+            this.priority = config.priority;
+            this.world = world;
+            this.epoch = epoch;
+        }
 
-        public LastWrapper(List<IHandler> list, Vector3d position) {
-            this.list = list;
-            this.position = position;
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            HUDState that = (HUDState) o;
+            return showRegions == that.showRegions
+                    && showHandlers == that.showHandlers
+                    && priority == that.priority
+                    && epoch == that.epoch
+                    && world == that.world
+                    && regions.equals(that.regions)
+                    && handlers.equals(that.handlers);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(regions, handlers, showRegions, showHandlers, priority, epoch);
         }
     }
 
@@ -342,17 +381,17 @@ public class PlayerMoveListenerNew implements EventListener<DisplaceEntityEvent>
     public class Listeners {
         @Listener
         public void onJoin(ClientConnectionEvent.Join event) {
-            last.put(event.getTargetEntity(), new LastWrapper(null, event.getTargetEntity().getTransform().getPosition()));
+            last.put(event.getTargetEntity(), new LastWrapper(null, event.getTargetEntity().getTransform().getPosition(), 0));
+        }
+
+        @Listener
+        public void onDisconnect(ClientConnectionEvent.Disconnect event) {
+            hudStateMap.remove(event.getTargetEntity());
         }
 
         /*@Listener
         public void onPlayerChangeWorld() {
 
         }*/
-
-        @Listener
-        public void onChange(FGUpdateEvent event) {
-            last.clear();
-        }
     }
 }
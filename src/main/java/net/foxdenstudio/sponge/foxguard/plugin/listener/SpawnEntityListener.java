@@ -25,19 +25,13 @@
 
 package net.foxdenstudio.sponge.foxguard.plugin.listener;
 
-import com.flowpowered.math.GenericMath;
-import com.flowpowered.math.vector.Vector3d;
-import com.flowpowered.math.vector.Vector3i;
 import net.foxdenstudio.sponge.foxguard.plugin.FGManager;
 import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagBitSet;
+import net.foxdenstudio.sponge.foxguard.plugin.flag.ImmutableFlagBitSet;
 import net.foxdenstudio.sponge.foxguard.plugin.handler.IHandler;
-import net.foxdenstudio.sponge.foxguard.plugin.object.IFGObject;
-import net.foxdenstudio.sponge.foxguard.plugin.util.ExtraContext;
+import net.foxdenstudio.sponge.foxguard.plugin.listener.util.EntityFlags;
+import net.foxdenstudio.sponge.foxguard.plugin.listener.util.HandlerChain;
 import org.spongepowered.api.entity.Entity;
-import org.spongepowered.api.entity.living.Agent;
-import org.spongepowered.api.entity.living.Hostile;
-import org.spongepowered.api.entity.living.Human;
-import org.spongepowered.api.entity.living.Living;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.entity.living.player.User;
 import org.spongepowered.api.event.EventListener;
@@ -47,15 +41,14 @@ import org.spongepowered.api.text.chat.ChatTypes;
 import org.spongepowered.api.util.Tristate;
 import org.spongepowered.api.world.World;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Set;
 
 import static net.foxdenstudio.sponge.foxguard.plugin.flag.Flags.*;
 
 public class SpawnEntityListener implements EventListener<SpawnEntityEvent> {
 
-    private static final FlagBitSet BASE_FLAG_SET = new FlagBitSet(ROOT, DEBUFF, SPAWN, ENTITY);
+    private static final ImmutableFlagBitSet BASE_FLAG_SET = new FlagBitSet(ROOT, DEBUFF, SPAWN, ENTITY).intern();
 
     @Override
     public void handle(SpawnEntityEvent event) throws Exception {
@@ -73,53 +66,28 @@ public class SpawnEntityListener implements EventListener<SpawnEntityEvent> {
             user = null;
         }
 
-        Entity oneEntity = event.getEntities().get(0);
-        FlagBitSet flags = (FlagBitSet) BASE_FLAG_SET.clone();
-        if (oneEntity instanceof Living) {
-            flags.set(LIVING);
-            if (oneEntity instanceof Agent) {
-                flags.set(MOB);
-                if (oneEntity instanceof Hostile) {
-                    flags.set(HOSTILE);
-                } else if (oneEntity instanceof Human) {
-                    flags.set(HUMAN);
-                } else {
-                    flags.set(PASSIVE);
-                }
-            }
-        }
-
-        List<IHandler> handlerList = new ArrayList<>();
         World world = event.getTargetWorld();
-
-        for (Entity entity : event.getEntities()) {
-            Vector3d loc = entity.getLocation().getPosition();
-            Vector3i chunk = new Vector3i(
-                    GenericMath.floor(loc.getX() / 16.0),
-                    GenericMath.floor(loc.getY() / 16.0),
-                    GenericMath.floor(loc.getZ() / 16.0));
-            FGManager.getInstance().getAllRegions(world, chunk).stream()
-                    .filter(region -> region.contains(loc, world))
-                    .forEach(region -> region.getHandlers().stream()
-                            .filter(IFGObject::isEnabled)
-                            .filter(handler -> !handlerList.contains(handler))
-                            .forEach(handlerList::add));
-        }
-        Collections.sort(handlerList);
-        int currPriority = handlerList.get(0).getPriority();
+        Set<Entity> denied = new HashSet<>();
+        IHandler[] previousHandlers = null;
+        ImmutableFlagBitSet previousFlags = null;
         Tristate flagState = Tristate.UNDEFINED;
-        for (IHandler handler : handlerList) {
-            if (handler.getPriority() < currPriority && flagState != Tristate.UNDEFINED) {
-                break;
+        for (Entity entity : event.getEntities()) {
+            ImmutableFlagBitSet flags = EntityFlags.with(BASE_FLAG_SET, entity);
+            IHandler[] handlers = FGManager.getInstance().getHandlersAtPos(world, entity.getLocation().getPosition());
+            // Entities spawned together are usually of the same kind and in the same cell.
+            if (handlers != previousHandlers || flags != previousFlags) {
+                previousHandlers = handlers;
+                previousFlags = flags;
+                flagState = HandlerChain.evaluate(handlers, user, flags, event);
             }
-            flagState = flagState.and(handler.handle(user, flags, ExtraContext.of(event)).getState());
-            currPriority = handler.getPriority();
+            if (flagState == Tristate.FALSE) denied.add(entity);
         }
-        if (flagState == Tristate.FALSE) {
-            if (user instanceof Player)
-                ((Player) user).sendMessage(ChatTypes.ACTION_BAR, Text.of("You don't have permission!"));
+        if (!denied.isEmpty() && user instanceof Player)
+            ((Player) user).sendMessage(ChatTypes.ACTION_BAR, Text.of("You don't have permission!"));
+        if (denied.size() == event.getEntities().size()) {
             event.setCancelled(true);
         } else {
+            if (!denied.isEmpty()) event.filterEntities(entity -> !denied.contains(entity));
             //makes sure that handlers are unable to cancel the event directly.
             event.setCancelled(false);
         }
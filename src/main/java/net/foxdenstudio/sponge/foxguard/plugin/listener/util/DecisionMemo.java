@@ -0,0 +1,97 @@
+/*
+ * This file is part of FoxGuard, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) gravityfox - https://gravityfox.net/
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.foxdenstudio.sponge.foxguard.plugin.listener.util;
+
+import net.foxdenstudio.sponge.foxguard.plugin.handler.IHandler;
+import org.spongepowered.api.util.Tristate;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * A fixed size, direct mapped memo of final chain decisions.
+ * Entries are keyed by the identity of a sorted handler array, the user and the interned flag set id,
+ * and are only valid for the configuration epoch they were stored in. Colliding entries simply replace each other.
+ * <p>
+ * Entries are immutable, so the memo can be read from any thread without locking.
+ */
+public class DecisionMemo {
+
+    private final Entry[] entries;
+    private final int mask;
+
+    /**
+     * @param size The number of slots. Rounded up to a power of two.
+     */
+    public DecisionMemo(int size) {
+        int capacity = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        this.entries = new Entry[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public Tristate get(IHandler[] handlers, UUID user, int flagsId, int epoch) {
+        Entry entry = entries[index(handlers, user, flagsId)];
+        if (entry != null && entry.handlers == handlers && entry.flagsId == flagsId
+                && entry.epoch == epoch && Objects.equals(entry.user, user)) {
+            return entry.result;
+        }
+        return null;
+    }
+
+    public void put(IHandler[] handlers, UUID user, int flagsId, int epoch, Tristate result) {
+        entries[index(handlers, user, flagsId)] = new Entry(handlers, user, flagsId, epoch, result);
+    }
+
+    public void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+    }
+
+    private int index(IHandler[] handlers, UUID user, int flagsId) {
+        int hash = System.identityHashCode(handlers);
+        hash = hash * 31 + (user == null ? 0 : user.hashCode());
+        hash = hash * 31 + flagsId;
+        hash ^= hash >>> 16;
+        return hash & mask;
+    }
+
+    private static final class Entry {
+        private final IHandler[] handlers;
+        private final UUID user;
+        private final int flagsId;
+        private final int epoch;
+        private final Tristate result;
+
+        private Entry(IHandler[] handlers, UUID user, int flagsId, int epoch, Tristate result) {
+            this.handlers = handlers;
+            this.user = user;
+            this.flagsId = flagsId;
+            this.epoch = epoch;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of FoxGuard, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) gravityfox - https://gravityfox.net/
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.foxdenstudio.sponge.foxguard.plugin.listener.util;
+
+import net.foxdenstudio.sponge.foxguard.plugin.flag.Flag;
+import net.foxdenstudio.sponge.foxguard.plugin.flag.ImmutableFlagBitSet;
+import org.spongepowered.api.entity.Entity;
+import org.spongepowered.api.entity.living.Agent;
+import org.spongepowered.api.entity.living.Hostile;
+import org.spongepowered.api.entity.living.Human;
+import org.spongepowered.api.entity.living.Living;
+import org.spongepowered.api.entity.living.player.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.foxdenstudio.sponge.foxguard.plugin.flag.Flags.*;
+
+/**
+ * Classifies entities into their entity flags, such as living, mob and hostile.
+ * The classification only depends on the entity's class, so it is computed once per class and shared by all listeners.
+ */
+public final class EntityFlags {
+
+    private static final ClassValue<Flag[]> FLAGS = new ClassValue<Flag[]>() {
+        @Override
+        protected Flag[] computeValue(Class<?> type) {
+            List<Flag> flags = new ArrayList<>();
+            if (Living.class.isAssignableFrom(type)) {
+                flags.add(LIVING);
+                if (Agent.class.isAssignableFrom(type)) {
+                    flags.add(MOB);
+                    if (Hostile.class.isAssignableFrom(type)) {
+                        flags.add(HOSTILE);
+                    } else if (Human.class.isAssignableFrom(type)) {
+                        flags.add(HUMAN);
+                    } else {
+                        flags.add(PASSIVE);
+                    }
+                } else if (Player.class.isAssignableFrom(type)) {
+                    flags.add(PLAYER);
+                }
+            }
+            return flags.toArray(new Flag[flags.size()]);
+        }
+    };
+
+    private EntityFlags() {
+    }
+
+    /**
+     * Adds the flags that describe an entity to a flag set.
+     *
+     * @param flags  The base flag set.
+     * @param entity The entity.
+     * @return The interned flag set with the entity flags added.
+     */
+    public static ImmutableFlagBitSet with(ImmutableFlagBitSet flags, Entity entity) {
+        for (Flag flag : FLAGS.get(entity.getClass())) {
+            flags = flags.with(flag);
+        }
+        return flags;
+    }
+}
@@ -34,9 +34,9 @@ import java.util.Optional;
 
 public final class EventResult {
 
-    private static final EventResult SUCCESS = of(Tristate.TRUE);
-    private static final EventResult PASSTHROUGH = of(Tristate.UNDEFINED);
-    private static final EventResult FAILURE = of(Tristate.FALSE);
+    private static final EventResult SUCCESS = new EventResult(Tristate.TRUE, Optional.empty());
+    private static final EventResult PASSTHROUGH = new EventResult(Tristate.UNDEFINED, Optional.empty());
+    private static final EventResult FAILURE = new EventResult(Tristate.FALSE, Optional.empty());
 
     private final Tristate state;
     private final Optional<ISendableMessage> message;
@@ -46,8 +46,21 @@ public final class EventResult {
         this.message = message;
     }
 
+    /**
+     * Gets the result for a state without a message. These results are shared constants, so this never allocates.
+     *
+     * @param state The state of the result.
+     * @return The shared result for that state.
+     */
     public static EventResult of(Tristate state) {
-        return new EventResult(state, Optional.empty());
+        switch (state) {
+            case TRUE:
+                return SUCCESS;
+            case FALSE:
+                return FAILURE;
+            default:
+                return PASSTHROUGH;
+        }
     }
 
     public static EventResult of(Tristate success, ISendableMessage message) {
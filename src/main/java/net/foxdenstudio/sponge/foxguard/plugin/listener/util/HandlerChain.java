@@ -0,0 +1,221 @@
+/*
+ * This file is part of FoxGuard, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) gravityfox - https://gravityfox.net/
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.foxdenstudio.sponge.foxguard.plugin.listener.util;
+
+import net.foxdenstudio.sponge.foxguard.plugin.FGManager;
+import net.foxdenstudio.sponge.foxguard.plugin.flag.FlagBitSet;
+import net.foxdenstudio.sponge.foxguard.plugin.flag.ImmutableFlagBitSet;
+import net.foxdenstudio.sponge.foxguard.plugin.handler.IHandler;
+import net.foxdenstudio.sponge.foxguard.plugin.util.ExtraContext;
+import org.spongepowered.api.entity.living.player.User;
+import org.spongepowered.api.event.Event;
+import org.spongepowered.api.util.Tristate;
+
+import javax.annotation.Nullable;
+import java.util.UUID;
+
+import static org.spongepowered.api.util.Tristate.*;
+
+/**
+ * Evaluates handlers in priority order, the way every listener resolves a flag decision.
+ * <p>
+ * Handlers are asked from highest to lowest priority, and results within one priority level are combined.
+ * Evaluation stops at the first lower priority level once the combined state is no longer undefined.
+ * All handler arrays passed in must already be sorted by priority, as returned by {@code FGManager.getHandlersAtPos}.
+ * Handlers are not thread safe, so chains must only be evaluated on the main thread.
+ * <p>
+ * The extra context is only built from the event once a handler that {@link IHandler#needsContext() needs it} is reached.
+ * Until then, handlers are given the shared empty context.
+ * <p>
+ * Single flag set decisions are memoized when every handler that was asked is {@link IHandler#isMemoizable() memoizable}.
+ * The memo is keyed by the identity of the handler array, so it works best with the shared arrays from the region cache.
+ */
+public final class HandlerChain {
+
+    /**
+     * The maximum number of flag sets that can be evaluated in a single pass.
+     */
+    public static final int MAX_FLAG_SETS = 16;
+
+    private static final int RESULT_UNDEFINED = 0;
+    private static final int RESULT_TRUE = 1;
+    private static final int RESULT_FALSE = 2;
+
+    private static final DecisionMemo MEMO = new DecisionMemo(4096);
+
+    private HandlerChain() {
+    }
+
+    public static Tristate evaluate(IHandler[] handlers, @Nullable User user, FlagBitSet flags, Event event) {
+        return evaluate(handlers, user, flags, event, true);
+    }
+
+    /**
+     * Evaluates a sorted handler array for a single set of flags.
+     * Memoization should be turned off for arrays that are built just for one event,
+     * since the memo matches arrays by identity and such arrays would only push out useful entries.
+     *
+     * @param handlers The sorted handlers.
+     * @param user     The user, if any.
+     * @param flags    The flags of the event.
+     * @param event    The event being handled.
+     * @param memoize  Whether the decision may be looked up in and stored to the memo.
+     * @return The combined decision.
+     */
+    public static Tristate evaluate(IHandler[] handlers, @Nullable User user, FlagBitSet flags, Event event, boolean memoize) {
+        Tristate state = UNDEFINED;
+        if (handlers.length == 0) return state;
+        ImmutableFlagBitSet key = flags.intern();
+        UUID uuid = user == null ? null : user.getUniqueId();
+        int epoch = FGManager.getInstance().getEpoch();
+        if (memoize) {
+            Tristate memo = MEMO.get(handlers, uuid, key.getId(), epoch);
+            if (memo != null) return memo;
+        }
+
+        boolean memoizable = memoize;
+        ExtraContext extra = ExtraContext.empty();
+        int currPriority = handlers[0].getPriority();
+        for (IHandler handler : handlers) {
+            int priority = handler.getPriority();
+            if (priority < currPriority && state != UNDEFINED) break;
+            if (extra == ExtraContext.empty() && handler.needsContext()) extra = ExtraContext.of(event);
+            state = state.and(handler.handleState(user, key, extra));
+            memoizable &= handler.isMemoizable();
+            currPriority = priority;
+        }
+        if (memoizable) MEMO.put(handlers, uuid, key.getId(), epoch, state);
+        return state;
+    }
+
+    /**
+     * Evaluates two sorted handler arrays as one chain, each with its own flags.
+     * The arrays are merged by priority while walking them, so they do not need to be combined first.
+     *
+     * @param first       The first sorted handler array.
+     * @param firstFlags  The flags to pass to handlers from the first array.
+     * @param second      The second sorted handler array.
+     * @param secondFlags The flags to pass to handlers from the second array.
+     * @param user        The user, if any.
+     * @param event       The event being handled.
+     * @return The combined decision.
+     */
+    public static Tristate evaluate(IHandler[] first, FlagBitSet firstFlags, IHandler[] second, FlagBitSet secondFlags,
+                                    @Nullable User user, Event event) {
+        Tristate state = UNDEFINED;
+        ExtraContext extra = ExtraContext.empty();
+        int i = 0, j = 0;
+        int currPriority = Integer.MAX_VALUE;
+        while (i < first.length || j < second.length) {
+            IHandler handler;
+            FlagBitSet flags;
+            if (j >= second.length || (i < first.length && first[i].getPriority() >= second[j].getPriority())) {
+                handler = first[i++];
+                flags = firstFlags;
+            } else {
+                handler = second[j++];
+                flags = secondFlags;
+            }
+            int priority = handler.getPriority();
+            if (priority < currPriority && state != UNDEFINED) break;
+            if (extra == ExtraContext.empty() && handler.needsContext()) extra = ExtraContext.of(event);
+            state = state.and(handler.handleState(user, flags, extra));
+            currPriority = priority;
+        }
+        return state;
+    }
+
+    /**
+     * Evaluates several flag sets against the same handlers in a single pass.
+     * Each flag set stops independently, exactly as if it had been evaluated on its own.
+     * Use {@link #getResult(int, int)} to unpack the decision for each flag set.
+     *
+     * @param handlers The sorted handlers.
+     * @param user     The user, if any.
+     * @param flagSets The flag sets to evaluate. At most {@link #MAX_FLAG_SETS}.
+     * @param event    The event being handled.
+     * @return The packed decisions.
+     */
+    public static int evaluate(IHandler[] handlers, @Nullable User user, FlagBitSet[] flagSets, Event event) {
+        if (flagSets.length > MAX_FLAG_SETS)
+            throw new IllegalArgumentException("Can't evaluate more than " + MAX_FLAG_SETS + " flag sets at once!");
+        int results = 0;
+        int pending = (1 << flagSets.length) - 1;
+        if (handlers.length == 0) return results;
+        ExtraContext extra = ExtraContext.empty();
+        int currPriority = handlers[0].getPriority();
+        for (IHandler handler : handlers) {
+            int priority = handler.getPriority();
+            if (priority < currPriority) {
+                for (int i = 0; i < flagSets.length; i++) {
+                    if (((results >>> (i << 1)) & 3) != RESULT_UNDEFINED) pending &= ~(1 << i);
+                }
+                if (pending == 0) break;
+            }
+            if (extra == ExtraContext.empty() && handler.needsContext()) extra = ExtraContext.of(event);
+            for (int i = 0; i < flagSets.length; i++) {
+                if ((pending & (1 << i)) == 0) continue;
+                Tristate state = decode((results >>> (i << 1)) & 3).and(handler.handleState(user, flagSets[i], extra));
+                results = (results & ~(3 << (i << 1))) | (encode(state) << (i << 1));
+            }
+            currPriority = priority;
+        }
+        return results;
+    }
+
+    /**
+     * Unpacks one decision from the result of a multi-set evaluation.
+     *
+     * @param results The packed decisions.
+     * @param index   The index of the flag set.
+     * @return The decision for that flag set.
+     */
+    public static Tristate getResult(int results, int index) {
+        return decode((results >>> (index << 1)) & 3);
+    }
+
+    private static int encode(Tristate state) {
+        switch (state) {
+            case TRUE:
+                return RESULT_TRUE;
+            case FALSE:
+                return RESULT_FALSE;
+            default:
+                return RESULT_UNDEFINED;
+        }
+    }
+
+    private static Tristate decode(int result) {
+        switch (result) {
+            case RESULT_TRUE:
+                return TRUE;
+            case RESULT_FALSE:
+                return FALSE;
+            default:
+                return UNDEFINED;
+        }
+    }
+}
@@ -25,10 +25,13 @@
 
 package net.foxdenstudio.sponge.foxguard.plugin.object;
 
+import net.foxdenstudio.sponge.foxguard.plugin.FGManager;
+
 public abstract class FGObjectBase implements IFGObject {
 
     protected String name;
     protected boolean isEnabled = true;
+    private int version;
 
     public FGObjectBase(String name, boolean isEnabled) {
         this.name = name;
@@ -43,6 +46,7 @@ public abstract class FGObjectBase implements IFGObject {
     @Override
     public void setName(String name) {
         this.name = name;
+        markModified();
     }
 
     @Override
@@ -53,6 +57,22 @@ public abstract class FGObjectBase implements IFGObject {
     @Override
     public void setIsEnabled(boolean state) {
         this.isEnabled = state;
+        markModified();
+    }
+
+    @Override
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Signals that this object has changed in a way that may affect protection decisions.
+     * Bumps the version of this object as well as the global epoch.
+     */
+    public void markModified() {
+        this.version++;
+        FGManager manager = FGManager.getInstance();
+        if (manager != null) manager.bumpEpoch();
     }
 
     @Override
@@ -97,6 +97,16 @@ public interface IFGObject {
      */
     void setIsEnabled(boolean state);
 
+    /**
+     * Gets the version of this object. It changes every time the object is modified,
+     * so cached data derived from the object can be checked against it.
+     *
+     * @return The current version of this object.
+     */
+    default int getVersion() {
+        return 0;
+    }
+
     /**
      * Gets the details for the object as a SpongeAPI {@link Text} Object. Used in the {@link CommandDetail Detail} command.
      * Should be dynamically generated with formatted text. Multiple lines are allowed.
@@ -78,6 +78,16 @@ public class GlobalRegion extends RegionBase implements IGlobal {
         return true;
     }
 
+    @Override
+    public boolean isYIndependent() {
+        return true;
+    }
+
+    @Override
+    public boolean containsBox(Vector3i a, Vector3i b, World world) {
+        return true;
+    }
+
     @Override
     public String getShortTypeName() {
         return "SGlobal";
@@ -25,9 +25,11 @@
 
 package net.foxdenstudio.sponge.foxguard.plugin.region;
 
+import com.flowpowered.math.vector.Vector3i;
 import net.foxdenstudio.sponge.foxcore.plugin.util.IBounded;
 import net.foxdenstudio.sponge.foxguard.plugin.object.IFGObject;
 import net.foxdenstudio.sponge.foxguard.plugin.object.ILinkable;
+import org.spongepowered.api.world.World;
 
 /**
  * Created by Fox on 3/29/2016.
@@ -38,4 +40,28 @@ public interface IRegion extends IFGObject, ILinkable, IBounded {
         return true;
     }
 
+    /**
+     * Whether this region's shape is the same at every height.
+     * Such regions are cached per chunk column instead of per chunk section.
+     *
+     * @return Whether containment never depends on the y coordinate.
+     */
+    default boolean isYIndependent() {
+        return false;
+    }
+
+    /**
+     * Checks whether this region contains every block in a box.
+     * Used to skip per-position checks for regions that cover a whole chunk.
+     * Returning false is always safe, so regions that can't answer cheaply don't need to override this.
+     *
+     * @param a     The lower corner of the box, inclusive.
+     * @param b     The upper corner of the box, inclusive.
+     * @param world The world the box is in.
+     * @return Whether every block in the box is inside this region.
+     */
+    default boolean containsBox(Vector3i a, Vector3i b, World world) {
+        return false;
+    }
+
 }
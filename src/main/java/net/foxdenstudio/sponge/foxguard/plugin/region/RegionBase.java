@@ -58,20 +58,33 @@ public abstract class RegionBase extends FGObjectBase implements IRegion {
 
     @Override
     public boolean addHandler(IHandler handler) {
-        return FGManager.getInstance().isRegistered(handler) && this.handlers.add(handler);
+        if (FGManager.getInstance().isRegistered(handler) && this.handlers.add(handler)) {
+            markModified();
+            FGManager.getInstance().markHandlersDirty();
+            return true;
+        }
+        return false;
     }
 
     @Override
     public boolean removeHandler(IHandler handler) {
-        return this.handlers.remove(handler);
+        if (this.handlers.remove(handler)) {
+            markModified();
+            FGManager.getInstance().markHandlersDirty();
+            return true;
+        }
+        return false;
     }
 
     @Override
     public void clearHandlers() {
         this.handlers.clear();
+        markModified();
+        FGManager.getInstance().markHandlersDirty();
     }
 
     public void markDirty() {
+        markModified();
         FGUtil.markRegionDirty(this);
     }
 
@@ -127,6 +127,19 @@ public class CuboidRegion extends WorldRegionBase {
                 || a.getY() > d.getY() || b.getY() < c.getY());
     }
 
+    @Override
+    public boolean containsBox(Vector3i a, Vector3i b) {
+        Vector3i c = this.boundingBox.a, d = this.boundingBox.b;
+        return a.getX() >= c.getX() && b.getX() <= d.getX()
+                && a.getY() >= c.getY() && b.getY() <= d.getY()
+                && a.getZ() >= c.getZ() && b.getZ() <= d.getZ();
+    }
+
+    @Override
+    public BoundingBox3 getBounds() {
+        return boundingBox;
+    }
+
     @Override
     public String getShortTypeName() {
         return "Cube";
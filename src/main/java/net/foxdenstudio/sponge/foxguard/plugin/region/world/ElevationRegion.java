@@ -30,6 +30,7 @@ import com.google.common.collect.ImmutableList;
 import net.foxdenstudio.sponge.foxcore.common.util.FCCUtil;
 import net.foxdenstudio.sponge.foxcore.plugin.command.util.AdvCmdParser;
 import net.foxdenstudio.sponge.foxcore.plugin.command.util.ProcessResult;
+import net.foxdenstudio.sponge.foxcore.plugin.util.BoundingBox3;
 import net.foxdenstudio.sponge.foxcore.plugin.util.FCPUtil;
 import net.foxdenstudio.sponge.foxguard.plugin.object.factory.IWorldRegionFactory;
 import ninja.leaping.configurate.ConfigurationOptions;
@@ -111,6 +112,18 @@ public class ElevationRegion extends WorldRegionBase {
         return !(a > this.upperBound || b < this.lowerBound);
     }
 
+    @Override
+    public boolean containsBox(Vector3i a, Vector3i b) {
+        return a.getY() >= lowerBound && b.getY() <= upperBound;
+    }
+
+    @Override
+    public BoundingBox3 getBounds() {
+        return new BoundingBox3(
+                new Vector3i(Integer.MIN_VALUE, lowerBound, Integer.MIN_VALUE),
+                new Vector3i(Integer.MAX_VALUE, upperBound, Integer.MAX_VALUE));
+    }
+
     @Override
     public Text details(CommandSource source, String arguments) {
         Text.Builder builder = Text.builder();
@@ -25,11 +25,13 @@
 
 package net.foxdenstudio.sponge.foxguard.plugin.region.world;
 
+import com.flowpowered.math.GenericMath;
 import com.flowpowered.math.vector.Vector2i;
 import com.flowpowered.math.vector.Vector3i;
 import com.google.common.collect.ImmutableList;
 import net.foxdenstudio.sponge.foxcore.plugin.command.util.ProcessResult;
 import net.foxdenstudio.sponge.foxcore.plugin.util.BoundingBox2;
+import net.foxdenstudio.sponge.foxcore.plugin.util.BoundingBox3;
 import org.spongepowered.api.command.CommandException;
 import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.text.Text;
@@ -62,16 +64,35 @@ public class EllipticalRegion extends WorldRegionBase {
 
     @Override
     public boolean contains(int x, int y, int z) {
-        double xo = x + 0.5 - centerX, yo = y + 0.5 - centerY;
+        double xo = x + 0.5 - centerX, yo = z + 0.5 - centerY;
         return (xo * xo / widthSq) + (yo * yo / heightSq) <= 1;
     }
 
     @Override
     public boolean contains(double x, double y, double z) {
-        double xo = x - centerX, yo = y - centerY;
+        double xo = x - centerX, yo = z - centerY;
         return (xo * xo / widthSq) + (yo * yo / heightSq) <= 1;
     }
 
+    @Override
+    public boolean isYIndependent() {
+        return true;
+    }
+
+    @Override
+    public boolean containsBox(Vector3i a, Vector3i b) {
+        // The ellipse is convex, so the box is inside if all of its outer corners are.
+        double x1 = a.getX(), z1 = a.getZ(), x2 = b.getX() + 1, z2 = b.getZ() + 1;
+        return contains(x1, 0.0, z1) && contains(x1, 0.0, z2) && contains(x2, 0.0, z1) && contains(x2, 0.0, z2);
+    }
+
+    @Override
+    public BoundingBox3 getBounds() {
+        return new BoundingBox3(
+                new Vector3i(GenericMath.floor(centerX - width) - 1, Integer.MIN_VALUE, GenericMath.floor(centerY - height) - 1),
+                new Vector3i(GenericMath.floor(centerX + width) + 1, Integer.MAX_VALUE, GenericMath.floor(centerY + height) + 1));
+    }
+
     @Override
     public String getShortTypeName() {
         return "Elli2D";
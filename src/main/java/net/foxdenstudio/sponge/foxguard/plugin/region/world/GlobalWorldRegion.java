@@ -123,6 +123,16 @@ public class GlobalWorldRegion extends WorldRegionBase implements IGlobal {
         return true;
     }
 
+    @Override
+    public boolean isYIndependent() {
+        return true;
+    }
+
+    @Override
+    public boolean containsBox(Vector3i a, Vector3i b) {
+        return true;
+    }
+
     @Override
     public boolean autoSave() {
         return false;
@@ -26,14 +26,30 @@
 package net.foxdenstudio.sponge.foxguard.plugin.region.world;
 
 import com.flowpowered.math.vector.Vector3i;
+import net.foxdenstudio.sponge.foxcore.plugin.util.BoundingBox3;
 import net.foxdenstudio.sponge.foxcore.plugin.util.IWorldBounded;
 import net.foxdenstudio.sponge.foxguard.plugin.region.IRegion;
 import org.spongepowered.api.world.World;
 
 public interface IWorldRegion extends IRegion, IWorldBounded {
 
+    BoundingBox3 INFINITE_BOUNDS = new BoundingBox3(
+            new Vector3i(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE),
+            new Vector3i(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE));
+
     World getWorld();
 
+    /**
+     * Gets a box that encloses every block of this region. Used to place the region in the spatial index.
+     * The box may be larger than the region, but never smaller.
+     * Axes that the region does not restrict should span the entire integer range.
+     *
+     * @return The enclosing bounds of this region, inclusive on both ends.
+     */
+    default BoundingBox3 getBounds() {
+        return INFINITE_BOUNDS;
+    }
+
     void setWorld(World world);
 
     @Override
@@ -46,6 +62,23 @@ public interface IWorldRegion extends IRegion, IWorldBounded {
         return world == getWorld() && contains(x, y, z);
     }
 
+    /**
+     * Checks whether this region contains every block in a box.
+     *
+     * @param a The lower corner of the box, inclusive.
+     * @param b The upper corner of the box, inclusive.
+     * @return Whether every block in the box is inside this region.
+     * @see IRegion#containsBox(Vector3i, Vector3i, World)
+     */
+    default boolean containsBox(Vector3i a, Vector3i b) {
+        return false;
+    }
+
+    @Override
+    default boolean containsBox(Vector3i a, Vector3i b, World world) {
+        return world == getWorld() && containsBox(a, b);
+    }
+
     @Override
     default boolean isInChunk(Vector3i chunk, World world) {
         return world == getWorld() && isInChunk(chunk);
@@ -32,6 +32,7 @@ import net.foxdenstudio.sponge.foxcore.common.util.FCCUtil;
 import net.foxdenstudio.sponge.foxcore.plugin.command.util.AdvCmdParser;
 import net.foxdenstudio.sponge.foxcore.plugin.command.util.ProcessResult;
 import net.foxdenstudio.sponge.foxcore.plugin.util.BoundingBox2;
+import net.foxdenstudio.sponge.foxcore.plugin.util.BoundingBox3;
 import net.foxdenstudio.sponge.foxcore.plugin.util.FCPUtil;
 import net.foxdenstudio.sponge.foxguard.plugin.object.factory.IWorldRegionFactory;
 import ninja.leaping.configurate.ConfigurationOptions;
@@ -119,6 +120,25 @@ public class RectangularRegion extends WorldRegionBase {
         return !(a.getX() > d.getX() || b.getX() < c.getX() || a.getY() > d.getY() || b.getY() < c.getY());
     }
 
+    @Override
+    public boolean isYIndependent() {
+        return true;
+    }
+
+    @Override
+    public boolean containsBox(Vector3i a, Vector3i b) {
+        Vector2i c = this.boundingBox.a, d = this.boundingBox.b;
+        return a.getX() >= c.getX() && b.getX() <= d.getX()
+                && a.getZ() >= c.getY() && b.getZ() <= d.getY();
+    }
+
+    @Override
+    public BoundingBox3 getBounds() {
+        return new BoundingBox3(
+                new Vector3i(boundingBox.a.getX(), Integer.MIN_VALUE, boundingBox.a.getY()),
+                new Vector3i(boundingBox.b.getX(), Integer.MAX_VALUE, boundingBox.b.getY()));
+    }
+
     @Override
     public String getShortTypeName() {
         return "Rect";
@@ -35,6 +35,8 @@ import java.util.Optional;
  */
 public class ExtraContext {
 
+    private static final ExtraContext EMPTY = new ExtraContext(new Object[0]);
+
     private Object[] objects;
     private List<Object> objectList;
 
@@ -46,6 +48,15 @@ public class ExtraContext {
         return new ExtraContext(objects);
     }
 
+    /**
+     * Gets the shared empty context. Passed to handlers that don't need any context.
+     *
+     * @return The empty context.
+     */
+    public static ExtraContext empty() {
+        return EMPTY;
+    }
+
     public boolean present(Class<?> clazz) {
         for (Object o : objects) {
             if (clazz.isInstance(o)) return true;
@@ -129,6 +129,7 @@ public final class FGUtil {
     }
 
     public static void markHandlerDirty(IHandler handler) {
+        FGManager.getInstance().markModified(handler);
         FGStorageManager.getInstance().defaultModifiedMap.put(handler, true);
         Sponge.getGame().getEventManager().post(FGEventFactory.createFGUpdateObjectEvent(FoxGuardMain.getCause(), handler));
     }
@@ -0,0 +1,188 @@
+/*
+ * This file is part of FoxGuard, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) gravityfox - https://gravityfox.net/
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.foxdenstudio.sponge.foxguard.plugin.util;
+
+import com.flowpowered.math.vector.Vector3i;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import net.foxdenstudio.sponge.foxguard.plugin.handler.IHandler;
+import net.foxdenstudio.sponge.foxguard.plugin.object.IFGObject;
+import net.foxdenstudio.sponge.foxguard.plugin.region.IRegion;
+import net.foxdenstudio.sponge.foxguard.plugin.region.world.IWorldRegion;
+import org.spongepowered.api.world.World;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * An immutable copy of the registered regions, handlers, links and spatial indexes at one point in time.
+ * <p>
+ * Snapshots are built on the main thread after objects change and published through a volatile reference,
+ * so they can be read from any thread without locking. Region shapes and handler logic are still read live.
+ * <p>
+ * A snapshot only answers lookups: which regions exist, where they are, and which handlers they link to.
+ * Handlers keep mutable caches that are not thread safe, so evaluating them, for example through
+ * {@link net.foxdenstudio.sponge.foxguard.plugin.listener.util.HandlerChain HandlerChain}, must stay on the main thread.
+ */
+public final class ProtectionSnapshot {
+
+    private final ImmutableSet<IRegion> regions;
+    private final ImmutableMap<World, ImmutableSet<IWorldRegion>> worldRegions;
+    private final ImmutableSet<IHandler> handlers;
+    private final ImmutableMap<IRegion, ImmutableList<IHandler>> links;
+    private final ImmutableSet<IFGObject> enabled;
+    private final ImmutableMap<World, RTree<IWorldRegion>> indexes;
+
+    public ProtectionSnapshot(Set<IRegion> regions, Map<World, Set<IWorldRegion>> worldRegions, Set<IHandler> handlers) {
+        ImmutableMap.Builder<IRegion, ImmutableList<IHandler>> links = ImmutableMap.builder();
+        ImmutableSet.Builder<IFGObject> enabled = ImmutableSet.builder();
+        ImmutableMap.Builder<World, ImmutableSet<IWorldRegion>> worldRegionsBuilder = ImmutableMap.builder();
+        ImmutableMap.Builder<World, RTree<IWorldRegion>> indexes = ImmutableMap.builder();
+
+        this.regions = ImmutableSet.copyOf(regions);
+        for (IRegion region : this.regions) {
+            links.put(region, ImmutableList.copyOf(region.getHandlers()));
+            if (region.isEnabled()) enabled.add(region);
+        }
+        for (Map.Entry<World, Set<IWorldRegion>> entry : worldRegions.entrySet()) {
+            ImmutableSet<IWorldRegion> set = ImmutableSet.copyOf(entry.getValue());
+            RTree<IWorldRegion> index = new RTree<>();
+            for (IWorldRegion region : set) {
+                links.put(region, ImmutableList.copyOf(region.getHandlers()));
+                if (region.isEnabled()) enabled.add(region);
+                RegionCache.index(index, region);
+            }
+            worldRegionsBuilder.put(entry.getKey(), set);
+            indexes.put(entry.getKey(), index);
+        }
+        this.handlers = ImmutableSet.copyOf(handlers);
+        for (IHandler handler : this.handlers) {
+            if (handler.isEnabled()) enabled.add(handler);
+        }
+        this.worldRegions = worldRegionsBuilder.build();
+        this.links = links.build();
+        this.enabled = enabled.build();
+        this.indexes = indexes.build();
+    }
+
+    public Set<IRegion> getRegions() {
+        return regions;
+    }
+
+    public Set<IWorldRegion> getWorldRegions(World world) {
+        ImmutableSet<IWorldRegion> set = worldRegions.get(world);
+        return set == null ? ImmutableSet.of() : set;
+    }
+
+    public Set<IHandler> getHandlers() {
+        return handlers;
+    }
+
+    public List<IHandler> getLinks(IRegion region) {
+        ImmutableList<IHandler> list = links.get(region);
+        return list == null ? ImmutableList.of() : list;
+    }
+
+    public boolean isEnabled(IFGObject object) {
+        return enabled.contains(object);
+    }
+
+    /**
+     * Gets every region that may touch a chunk section, the same way {@link RegionCache} would.
+     *
+     * @param world           The world of the chunk.
+     * @param x               The chunk x coordinate.
+     * @param y               The chunk y coordinate.
+     * @param z               The chunk z coordinate.
+     * @param includeDisabled Whether regions that were disabled when the snapshot was taken are included.
+     * @return The regions touching the chunk.
+     */
+    public Set<IRegion> getRegionsInChunk(World world, int x, int y, int z, boolean includeDisabled) {
+        Set<IRegion> set = new HashSet<>();
+        Vector3i chunk = new Vector3i(x, y, z);
+        collect(world, x << 4, y << 4, z << 4, (x << 4) + 16, (y << 4) + 16, (z << 4) + 16,
+                region -> (includeDisabled || enabled.contains(region)) && region.isInChunk(chunk, world), set);
+        return set;
+    }
+
+    /**
+     * Gets the enabled handlers of every enabled region that contains a block, sorted by priority.
+     *
+     * @param world The world of the block.
+     * @param x     The block x coordinate.
+     * @param y     The block y coordinate.
+     * @param z     The block z coordinate.
+     * @return The handlers that apply at the position.
+     */
+    public IHandler[] getHandlersAtPos(World world, int x, int y, int z) {
+        List<IRegion> list = new ArrayList<>();
+        collect(world, x, y, z, x, y, z, region -> enabled.contains(region) && region.contains(x, y, z, world), list);
+        return resolveHandlers(list);
+    }
+
+    /**
+     * Gets the enabled handlers of every enabled region that contains a position, sorted by priority.
+     *
+     * @param world The world of the position.
+     * @param x     The x coordinate.
+     * @param y     The y coordinate.
+     * @param z     The z coordinate.
+     * @return The handlers that apply at the position.
+     */
+    public IHandler[] getHandlersAtPos(World world, double x, double y, double z) {
+        int bx = (int) Math.floor(x), by = (int) Math.floor(y), bz = (int) Math.floor(z);
+        List<IRegion> list = new ArrayList<>();
+        // Double containment can reach one block past the integer bounds, so widen the query by one.
+        collect(world, bx - 1, by - 1, bz - 1, bx, by, bz, region -> enabled.contains(region) && region.contains(x, y, z, world), list);
+        return resolveHandlers(list);
+    }
+
+    private void collect(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+                         Predicate<IRegion> filter, Collection<IRegion> out) {
+        RTree<IWorldRegion> index = indexes.get(world);
+        if (index != null) {
+            index.query(minX, minY, minZ, maxX, maxY, maxZ, region -> {
+                if (filter.test(region)) out.add(region);
+            });
+        }
+        for (IRegion region : regions) {
+            if (filter.test(region)) out.add(region);
+        }
+    }
+
+    private IHandler[] resolveHandlers(List<IRegion> regions) {
+        List<IHandler> handlerList = new ArrayList<>();
+        for (IRegion region : regions) {
+            for (IHandler handler : getLinks(region)) {
+                if (enabled.contains(handler) && !handlerList.contains(handler)) handlerList.add(handler);
+            }
+        }
+        Collections.sort(handlerList);
+        return handlerList.toArray(new IHandler[handlerList.size()]);
+    }
+
+}
@@ -0,0 +1,337 @@
+/*
+ * This file is part of FoxGuard, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) gravityfox - https://gravityfox.net/
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.foxdenstudio.sponge.foxguard.plugin.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A simple R-tree over integer block-space boxes.
+ * Bounds are inclusive on both ends, so a single block is a box whose min and max are equal.
+ * <p>
+ * Every value can only be present once. Removal is done through an internal value map,
+ * so it does not need to know the bounds a value was inserted with.
+ */
+public class RTree<T> {
+
+    private static final int MAX_ENTRIES = 16;
+    private static final int MIN_ENTRIES = 6;
+
+    private final Map<T, Leaf<T>> leaves = new HashMap<>();
+    private Node root = new Node(true);
+
+    public void insert(T value, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        remove(value);
+        Leaf<T> leaf = new Leaf<>(value, minX, minY, minZ, maxX, maxY, maxZ);
+        leaves.put(value, leaf);
+        insert(leaf, 0);
+    }
+
+    public boolean remove(T value) {
+        Leaf<T> leaf = leaves.remove(value);
+        if (leaf == null) return false;
+        Node node = leaf.parent;
+        node.remove(leaf);
+        condense(node);
+        return true;
+    }
+
+    public boolean contains(T value) {
+        return leaves.containsKey(value);
+    }
+
+    public int[] getBounds(T value) {
+        Leaf<T> leaf = leaves.get(value);
+        if (leaf == null) return null;
+        return new int[]{leaf.minX, leaf.minY, leaf.minZ, leaf.maxX, leaf.maxY, leaf.maxZ};
+    }
+
+    public int size() {
+        return leaves.size();
+    }
+
+    public void clear() {
+        leaves.clear();
+        root = new Node(true);
+    }
+
+    public void query(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Consumer<? super T> consumer) {
+        if (root.size == 0) return;
+        query(root, minX, minY, minZ, maxX, maxY, maxZ, consumer);
+    }
+
+    public void query(int x, int y, int z, Consumer<? super T> consumer) {
+        query(x, y, z, x, y, z, consumer);
+    }
+
+    public List<T> query(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        List<T> list = new ArrayList<>();
+        query(minX, minY, minZ, maxX, maxY, maxZ, list::add);
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void query(Node node, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Consumer<? super T> consumer) {
+        for (int i = 0; i < node.size; i++) {
+            Box child = node.children[i];
+            if (child.intersects(minX, minY, minZ, maxX, maxY, maxZ)) {
+                if (node.leaf) consumer.accept(((Leaf<T>) child).value);
+                else query((Node) child, minX, minY, minZ, maxX, maxY, maxZ, consumer);
+            }
+        }
+    }
+
+    private void insert(Box box, int level) {
+        Node node = chooseNode(box, level);
+        node.add(box);
+        Node split = null;
+        if (node.size > MAX_ENTRIES) split = split(node);
+        while (node != root) {
+            Node parent = node.parent;
+            parent.recalculate();
+            if (split != null) {
+                parent.add(split);
+                split = parent.size > MAX_ENTRIES ? split(parent) : null;
+            }
+            node = parent;
+        }
+        if (split != null) {
+            Node newRoot = new Node(false);
+            newRoot.add(root);
+            newRoot.add(split);
+            root = newRoot;
+        }
+    }
+
+    private Node chooseNode(Box box, int level) {
+        Node node = root;
+        while (!node.leaf && node.height() > level) {
+            Node best = null;
+            double bestEnlargement = Double.MAX_VALUE, bestVolume = Double.MAX_VALUE;
+            for (int i = 0; i < node.size; i++) {
+                Node child = (Node) node.children[i];
+                double volume = child.volume();
+                double enlargement = child.unionVolume(box) - volume;
+                if (enlargement < bestEnlargement || (enlargement == bestEnlargement && volume < bestVolume)) {
+                    best = child;
+                    bestEnlargement = enlargement;
+                    bestVolume = volume;
+                }
+            }
+            node = best;
+        }
+        return node;
+    }
+
+    /**
+     * Quadratic split. The given node keeps one group, and the returned sibling holds the other.
+     */
+    private Node split(Node node) {
+        Box[] entries = new Box[node.size];
+        System.arraycopy(node.children, 0, entries, 0, node.size);
+        int seedA = 0, seedB = 1;
+        double worst = -Double.MAX_VALUE;
+        for (int i = 0; i < entries.length; i++) {
+            for (int j = i + 1; j < entries.length; j++) {
+                double waste = entries[i].unionVolume(entries[j]) - entries[i].volume() - entries[j].volume();
+                if (waste > worst) {
+                    worst = waste;
+                    seedA = i;
+                    seedB = j;
+                }
+            }
+        }
+        Node sibling = new Node(node.leaf);
+        node.clear();
+        node.add(entries[seedA]);
+        sibling.add(entries[seedB]);
+        entries[seedA] = null;
+        entries[seedB] = null;
+        int remaining = entries.length - 2;
+        for (Box entry : entries) {
+            if (entry == null) continue;
+            Node target;
+            if (node.size + remaining <= MIN_ENTRIES) target = node;
+            else if (sibling.size + remaining <= MIN_ENTRIES) target = sibling;
+            else {
+                double growA = node.unionVolume(entry) - node.volume();
+                double growB = sibling.unionVolume(entry) - sibling.volume();
+                if (growA < growB || (growA == growB && node.size <= sibling.size)) target = node;
+                else target = sibling;
+            }
+            target.add(entry);
+            remaining--;
+        }
+        return sibling;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void condense(Node node) {
+        List<Box> orphans = new ArrayList<>();
+        while (node != root) {
+            Node parent = node.parent;
+            if (node.size < MIN_ENTRIES) {
+                parent.remove(node);
+                collectLeaves(node, orphans);
+            } else {
+                node.recalculate();
+            }
+            node = parent;
+        }
+        root.recalculate();
+        while (!root.leaf && root.size == 1) {
+            root = (Node) root.children[0];
+            root.parent = null;
+        }
+        if (root.size == 0) root = new Node(true);
+        for (Box orphan : orphans) {
+            insert(orphan, 0);
+        }
+    }
+
+    private void collectLeaves(Node node, List<Box> list) {
+        for (int i = 0; i < node.size; i++) {
+            if (node.leaf) list.add(node.children[i]);
+            else collectLeaves((Node) node.children[i], list);
+        }
+    }
+
+    private static abstract class Box {
+        int minX, minY, minZ, maxX, maxY, maxZ;
+        Node parent;
+
+        boolean intersects(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            return this.minX <= maxX && this.maxX >= minX
+                    && this.minY <= maxY && this.maxY >= minY
+                    && this.minZ <= maxZ && this.maxZ >= minZ;
+        }
+
+        double volume() {
+            return ((double) maxX - minX + 1) * ((double) maxY - minY + 1) * ((double) maxZ - minZ + 1);
+        }
+
+        double unionVolume(Box box) {
+            return ((double) Math.max(maxX, box.maxX) - Math.min(minX, box.minX) + 1)
+                    * ((double) Math.max(maxY, box.maxY) - Math.min(minY, box.minY) + 1)
+                    * ((double) Math.max(maxZ, box.maxZ) - Math.min(minZ, box.minZ) + 1);
+        }
+    }
+
+    private static final class Leaf<T> extends Box {
+        final T value;
+
+        Leaf(T value, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            this.value = value;
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.maxZ = maxZ;
+        }
+    }
+
+    private static final class Node extends Box {
+        final boolean leaf;
+        final Box[] children = new Box[MAX_ENTRIES + 1];
+        int size = 0;
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+        }
+
+        int height() {
+            int height = 0;
+            Node node = this;
+            while (!node.leaf) {
+                node = (Node) node.children[0];
+                height++;
+            }
+            return height;
+        }
+
+        void add(Box box) {
+            children[size++] = box;
+            box.parent = this;
+            if (size == 1) {
+                minX = box.minX;
+                minY = box.minY;
+                minZ = box.minZ;
+                maxX = box.maxX;
+                maxY = box.maxY;
+                maxZ = box.maxZ;
+            } else {
+                if (box.minX < minX) minX = box.minX;
+                if (box.minY < minY) minY = box.minY;
+                if (box.minZ < minZ) minZ = box.minZ;
+                if (box.maxX > maxX) maxX = box.maxX;
+                if (box.maxY > maxY) maxY = box.maxY;
+                if (box.maxZ > maxZ) maxZ = box.maxZ;
+            }
+        }
+
+        void remove(Box box) {
+            for (int i = 0; i < size; i++) {
+                if (children[i] == box) {
+                    children[i] = children[--size];
+                    children[size] = null;
+                    box.parent = null;
+                    return;
+                }
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                children[i] = null;
+            }
+            size = 0;
+        }
+
+        void recalculate() {
+            if (size == 0) return;
+            Box first = children[0];
+            minX = first.minX;
+            minY = first.minY;
+            minZ = first.minZ;
+            maxX = first.maxX;
+            maxY = first.maxY;
+            maxZ = first.maxZ;
+            for (int i = 1; i < size; i++) {
+                Box box = children[i];
+                if (box.minX < minX) minX = box.minX;
+                if (box.minY < minY) minY = box.minY;
+                if (box.minZ < minZ) minZ = box.minZ;
+                if (box.maxX > maxX) maxX = box.maxX;
+                if (box.maxY > maxY) maxY = box.maxY;
+                if (box.maxZ > maxZ) maxZ = box.maxZ;
+            }
+        }
+    }
+}
@@ -27,16 +27,14 @@ package net.foxdenstudio.sponge.foxguard.plugin.util;
 
 import com.flowpowered.math.vector.Vector3i;
 import com.google.common.collect.ImmutableSet;
+import net.foxdenstudio.sponge.foxcore.plugin.util.BoundingBox3;
 import net.foxdenstudio.sponge.foxcore.plugin.util.CacheMap;
-import net.foxdenstudio.sponge.foxguard.plugin.object.IFGObject;
+import net.foxdenstudio.sponge.foxguard.plugin.handler.IHandler;
 import net.foxdenstudio.sponge.foxguard.plugin.region.IRegion;
 import net.foxdenstudio.sponge.foxguard.plugin.region.world.IWorldRegion;
 import org.spongepowered.api.world.World;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 /**
  * Created by Fox on 3/30/2016.
@@ -45,23 +43,49 @@ import java.util.Set;
 //TODO Complete caching behavior in FGManager
 public class RegionCache {
 
+    private static final int MAX_HANDLER_SETS = 8;
+
     private final Map<World, Set<IWorldRegion>> worldRegions;
     private final Set<IRegion> regions;
 
-    private final Map<World, Map<Vector3i, ChunkData>> chunks;
+    private final Map<World, ChunkDataMap> chunks;
+    private final Map<World, RTree<IWorldRegion>> indexes;
+    private final int chunkCacheSize;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long unloads = 0;
+    private int handlerVersion = 0;
 
     public RegionCache(Set<IRegion> regions, Map<World, Set<IWorldRegion>> worldRegions) {
+        this(regions, worldRegions, 0);
+    }
+
+    /**
+     * Creates a region cache.
+     *
+     * @param regions        The set of super-regions.
+     * @param worldRegions   The map of world-regions per world.
+     * @param chunkCacheSize The maximum number of chunk columns kept per world. Zero or lower for no limit.
+     */
+    public RegionCache(Set<IRegion> regions, Map<World, Set<IWorldRegion>> worldRegions, int chunkCacheSize) {
         this.worldRegions = worldRegions;
         this.regions = regions;
+        this.chunkCacheSize = chunkCacheSize;
+        this.indexes = new CacheMap<>((world, indexMap) -> {
+            if (world instanceof World) {
+                RTree<IWorldRegion> index = new RTree<>();
+                for (IWorldRegion region : worldRegions.get(world)) {
+                    index(index, region);
+                }
+                indexMap.put((World) world, index);
+                return index;
+            } else return null;
+        });
         chunks = new CacheMap<>((world, worldDataMap) -> {
             if (world instanceof World) {
-                Map<Vector3i, ChunkData> worldData = new CacheMap<>((chunk, chunkDataMap) -> {
-                    if (chunk instanceof Vector3i) {
-                        ChunkData data = new ChunkData((World) world, (Vector3i) chunk);
-                        chunkDataMap.put((Vector3i) chunk, data);
-                        return data;
-                    } else return null;
-                });
+                ChunkDataMap worldData = new ChunkDataMap((World) world);
                 worldDataMap.put((World) world, worldData);
                 return worldData;
             } else return null;
@@ -70,105 +94,645 @@ public class RegionCache {
 
     public void markDirty(IRegion region, DirtyType type) {
         if (region instanceof IWorldRegion) {
-            for (ChunkData data : chunks.get(((IWorldRegion) region).getWorld()).values()) {
-                data.markDirty(region, type);
+            IWorldRegion worldRegion = (IWorldRegion) region;
+            if (type == DirtyType.REMOVED) {
+                for (Map.Entry<World, RTree<IWorldRegion>> entry : indexes.entrySet()) {
+                    int[] previous = entry.getValue().getBounds(worldRegion);
+                    if (previous != null) {
+                        entry.getValue().remove(worldRegion);
+                        chunks.get(entry.getKey()).markDirty(region, type, previous);
+                    }
+                }
+            } else if (worldRegion.getWorld() != null) {
+                RTree<IWorldRegion> index = indexes.get(worldRegion.getWorld());
+                int[] previous = index.getBounds(worldRegion);
+                if (type == DirtyType.ADDED || previous != null) index(index, worldRegion);
+                ChunkDataMap worldData = chunks.get(worldRegion.getWorld());
+                if (previous != null) worldData.markDirty(region, type, previous);
+                int[] current = index.getBounds(worldRegion);
+                if (current != null && !Arrays.equals(previous, current)) worldData.markDirty(region, type, current);
             }
         } else {
-            for (Map<Vector3i, ChunkData> worldData : chunks.values()) {
-                for (ChunkData data : worldData.values()) {
-                    data.markDirty(region, type);
-                }
+            for (ChunkDataMap worldData : chunks.values()) {
+                worldData.markDirty(region, type);
             }
         }
     }
 
+    /**
+     * Invalidates the resolved handler arrays of every cached chunk.
+     * Needs to be called whenever links, handler priorities or handler enabled states change.
+     */
+    public void markHandlersDirty() {
+        this.handlerVersion++;
+    }
+
     public void clearCaches() {
-        this.chunks.values().forEach(Map::clear);
+        this.chunks.values().forEach(ChunkDataMap::clear);
+    }
+
+    public void unloadWorld(World world) {
+        this.chunks.remove(world);
+        this.indexes.remove(world);
+    }
+
+    /**
+     * Drops all cached data for a chunk column. Called when the server unloads the chunk.
+     *
+     * @param world The world the chunk is in.
+     * @param x     The chunk x coordinate.
+     * @param z     The chunk z coordinate.
+     */
+    public void unloadChunk(World world, int x, int z) {
+        this.chunks.get(world).unloadColumn(x, z);
+    }
+
+    /**
+     * @return The number of cached chunk columns across all worlds.
+     */
+    public int getSize() {
+        int size = 0;
+        for (ChunkDataMap worldData : this.chunks.values()) {
+            size += worldData.size();
+        }
+        return size;
+    }
+
+    public int getChunkCacheSize() {
+        return chunkCacheSize;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getUnloads() {
+        return unloads;
+    }
+
+    public void resetStats() {
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+        this.unloads = 0;
     }
 
     public ChunkData getData(World world, Vector3i chunk) {
-        return this.chunks.get(world).get(chunk);
+        return getData(world, chunk.getX(), chunk.getY(), chunk.getZ());
+    }
+
+    public ChunkData getData(World world, int x, int y, int z) {
+        return this.chunks.get(world).get(x, y, z);
+    }
+
+    static void index(RTree<IWorldRegion> index, IWorldRegion region) {
+        BoundingBox3 bounds = region.getBounds();
+        index.insert(region,
+                bounds.a.getX(), bounds.a.getY(), bounds.a.getZ(),
+                bounds.b.getX(), bounds.b.getY(), bounds.b.getZ());
+    }
+
+    private static boolean isInside(int[] pos, long[] min, long[] max) {
+        for (int i = 0; i < 3; i++) {
+            if (pos[i] < min[i] || pos[i] > max[i]) return false;
+        }
+        return true;
+    }
+
+    private static Vector3i toVector(long[] pos) {
+        return new Vector3i((int) pos[0], (int) pos[1], (int) pos[2]);
+    }
+
+    private static long columnKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
     }
 
-    public class ChunkData {
+    /**
+     * Per-world chunk map that loads entries on demand.
+     * Columns are keyed by packed x and z coordinates and kept in an intrusive access-ordered list,
+     * so the least recently used column is dropped once the size limit is reached.
+     */
+    private class ChunkDataMap {
 
         private final World world;
-        private final Vector3i chunk;
+        private final LongHashMap<ColumnData> columns = new LongHashMap<>();
+        private ColumnData eldest, newest;
 
-        private final Set<IRegion> contains;
-        private final Set<IRegion> disabled;
-        private final Map<IRegion, DirtyType> dirty;
-        private boolean isDirty = false;
+        private ChunkDataMap(World world) {
+            this.world = world;
+        }
 
+        private ChunkData get(int x, int y, int z) {
+            long key = columnKey(x, z);
+            ColumnData column = columns.get(key);
+            boolean hit = column != null;
+            if (column == null) {
+                column = new ColumnData(world, x, z);
+                columns.put(key, column);
+                linkLast(column);
+                if (chunkCacheSize > 0 && columns.size() > chunkCacheSize) {
+                    remove(eldest);
+                    evictions++;
+                }
+            } else if (column != newest) {
+                unlink(column);
+                linkLast(column);
+            }
+            ChunkData data;
+            if (column.flat != null) {
+                data = column.flat;
+            } else {
+                data = column.sections.get(y);
+                if (data == null) {
+                    hit = false;
+                    data = new ChunkData(column, y);
+                    column.sections.put(y, data);
+                }
+            }
+            if (hit) hits++;
+            else misses++;
+            return data;
+        }
 
-        public ChunkData(World world, Vector3i chunk) {
+        private int size() {
+            return columns.size();
+        }
+
+        private void clear() {
+            columns.clear();
+            eldest = newest = null;
+        }
+
+        private void remove(ColumnData column) {
+            columns.remove(columnKey(column.x, column.z));
+            unlink(column);
+        }
+
+        private void unloadColumn(int x, int z) {
+            ColumnData column = columns.remove(columnKey(x, z));
+            if (column != null) {
+                unlink(column);
+                unloads++;
+            }
+        }
+
+        private void linkLast(ColumnData column) {
+            column.before = newest;
+            column.after = null;
+            if (newest == null) eldest = column;
+            else newest.after = column;
+            newest = column;
+        }
+
+        private void unlink(ColumnData column) {
+            if (column.before == null) eldest = column.after;
+            else column.before.after = column.after;
+            if (column.after == null) newest = column.before;
+            else column.after.before = column.before;
+            column.before = column.after = null;
+        }
+
+        private void markDirty(IRegion region, DirtyType type) {
+            ColumnData column = eldest;
+            while (column != null) {
+                ColumnData next = column.after;
+                markDirty(column, region, type, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                column = next;
+            }
+        }
+
+        /**
+         * Marks every cached cell that could touch the given block bounds.
+         * Walks the column range directly when it is smaller than the cache, otherwise scans the cache.
+         *
+         * @param region The region that changed.
+         * @param type   The type of change.
+         * @param bounds The block bounds as {minX, minY, minZ, maxX, maxY, maxZ}, inclusive.
+         */
+        private void markDirty(IRegion region, DirtyType type, int[] bounds) {
+            // A chunk spans [c * 16, c * 16 + 16] for the purposes of isInChunk, so it can touch the block before it.
+            int minX = (bounds[0] >> 4) - 1, minY = (bounds[1] >> 4) - 1, minZ = (bounds[2] >> 4) - 1;
+            int maxX = bounds[3] >> 4, maxY = bounds[4] >> 4, maxZ = bounds[5] >> 4;
+            double columnCount = ((double) maxX - minX + 1) * ((double) maxZ - minZ + 1);
+            if (columnCount <= columns.size()) {
+                for (int x = minX; x <= maxX; x++) {
+                    for (int z = minZ; z <= maxZ; z++) {
+                        ColumnData column = columns.get(columnKey(x, z));
+                        if (column != null) markDirty(column, region, type, minY, maxY);
+                    }
+                }
+            } else {
+                ColumnData column = eldest;
+                while (column != null) {
+                    ColumnData next = column.after;
+                    if (column.x >= minX && column.x <= maxX && column.z >= minZ && column.z <= maxZ) {
+                        markDirty(column, region, type, minY, maxY);
+                    }
+                    column = next;
+                }
+            }
+        }
+
+        private void markDirty(ColumnData column, IRegion region, DirtyType type, int minY, int maxY) {
+            if (column.flat != null && !region.isYIndependent()) {
+                // The column was built without room for this region, so rebuild it with sections on next access.
+                remove(column);
+            } else {
+                column.markDirty(region, type, minY, maxY);
+            }
+        }
+    }
+
+    /**
+     * A set of regions touching one cache cell, split into enabled and disabled.
+     * Changes are queued and only applied the next time the cell is read.
+     */
+    abstract class Cell {
+
+        final World world;
+        final Vector3i chunk;
+
+        final Set<IRegion> contains = new HashSet<>();
+        final Set<IRegion> disabled = new HashSet<>();
+        private final Map<IRegion, DirtyType> dirty = new HashMap<>();
+        private boolean isDirty = false;
+
+        Cell(World world, Vector3i chunk) {
             this.world = world;
             this.chunk = chunk;
-            this.dirty = new HashMap<>();
-            this.contains = new HashSet<>();
-            worldRegions.get(world).stream()
-                    .filter(IFGObject::isEnabled)
-                    .filter(r -> r.isInChunk(chunk))
-                    .forEach(contains::add);
-            regions.stream()
-                    .filter(IFGObject::isEnabled)
-                    .filter(r -> r.isInChunk(chunk, world))
-                    .forEach(contains::add);
-            this.disabled = new HashSet<>();
-            worldRegions.get(world).stream()
-                    .filter(r -> !r.isEnabled())
-                    .filter(r -> r.isInChunk(chunk))
-                    .forEach(disabled::add);
-            regions.stream()
-                    .filter(IFGObject::isEnabled)
-                    .filter(r -> r.isInChunk(chunk, world))
-                    .forEach(disabled::add);
         }
 
-        public Set<IRegion> getRegions(boolean includeDisabled) {
-            if (this.isDirty) {
-                for (Map.Entry<IRegion, DirtyType> entry : dirty.entrySet()) {
-                    IRegion r = entry.getKey();
-                    switch (entry.getValue()) {
-                        case ADDED:
-                            if (r.isInChunk(chunk, world)) {
-                                if (r.isEnabled()) {
-                                    contains.add(r);
-                                } else {
-                                    disabled.add(r);
-                                }
+        void add(IRegion region) {
+            if (region.isEnabled()) contains.add(region);
+            else disabled.add(region);
+        }
+
+        public void markDirty(IRegion region, DirtyType type) {
+            dirty.put(region, type);
+            isDirty = true;
+        }
+
+        /**
+         * Applies queued changes.
+         *
+         * @return Whether any changes were applied.
+         */
+        boolean applyChanges() {
+            if (!this.isDirty) return false;
+            for (Map.Entry<IRegion, DirtyType> entry : dirty.entrySet()) {
+                IRegion r = entry.getKey();
+                switch (entry.getValue()) {
+                    case ADDED:
+                        if (r.isInChunk(chunk, world)) {
+                            if (r.isEnabled()) {
+                                contains.add(r);
+                            } else {
+                                disabled.add(r);
                             }
-                            break;
-                        case MODIFIED:
-                            if (r.isInChunk(chunk, world)) {
-                                if (r.isEnabled()) {
-                                    contains.add(r);
-                                    disabled.remove(r);
-                                } else {
-                                    contains.remove(r);
-                                    disabled.add(r);
-                                }
+                        }
+                        break;
+                    case MODIFIED:
+                        if (r.isInChunk(chunk, world)) {
+                            if (r.isEnabled()) {
+                                contains.add(r);
+                                disabled.remove(r);
                             } else {
                                 contains.remove(r);
-                                disabled.remove(r);
+                                disabled.add(r);
                             }
-                            break;
-                        case REMOVED:
+                        } else {
                             contains.remove(r);
                             disabled.remove(r);
+                        }
+                        break;
+                    case REMOVED:
+                        contains.remove(r);
+                        disabled.remove(r);
+                        break;
+                }
+            }
+            this.dirty.clear();
+            this.isDirty = false;
+            return true;
+        }
+    }
+
+    /**
+     * The Y-independent regions of a chunk column.
+     * If no other region can reach the column it is flat, and a single {@link ChunkData} serves every height.
+     * Otherwise sections are created per height for the remaining regions.
+     */
+    private class ColumnData extends Cell {
+
+        private final int x, z;
+        private ColumnData before, after;
+
+        private ChunkData flat;
+        private LongHashMap<ChunkData> sections;
+
+        private IRegion[] full;
+        private IRegion[] partial;
+        private int version = 0;
+
+        private ColumnData(World world, int x, int z) {
+            super(world, new Vector3i(x, 0, z));
+            this.x = x;
+            this.z = z;
+            boolean sectioned = false;
+            int bx = x << 4, bz = z << 4;
+            for (IWorldRegion region : indexes.get(world).query(bx, Integer.MIN_VALUE, bz, bx + 16, Integer.MAX_VALUE, bz + 16)) {
+                if (!region.isYIndependent()) sectioned = true;
+                else if (region.isInChunk(chunk)) add(region);
+            }
+            for (IRegion region : regions) {
+                if (!region.isYIndependent()) sectioned = true;
+                else if (region.isInChunk(chunk, world)) add(region);
+            }
+            if (sectioned) this.sections = new LongHashMap<>(4);
+            else this.flat = new ChunkData(this, 0);
+        }
+
+        private void markDirty(IRegion region, DirtyType type, int minY, int maxY) {
+            if (region.isYIndependent()) {
+                markDirty(region, type);
+            } else if (flat != null) {
+                throw new IllegalStateException("Flat columns can't track height-dependent regions");
+            } else if ((long) maxY - minY + 1 <= sections.size()) {
+                for (int y = minY; y <= maxY; y++) {
+                    ChunkData data = sections.get(y);
+                    if (data != null) data.markDirty(region, type);
+                }
+            } else {
+                sections.forEachValue(data -> {
+                    int y = data.chunk.getY();
+                    if (y >= minY && y <= maxY) data.markDirty(region, type);
+                });
+            }
+        }
+
+        private void update() {
+            if (applyChanges() || partial == null) {
+                Vector3i a = new Vector3i(x << 4, 0, z << 4), b = a.add(15, 15, 15);
+                List<IRegion> fullList = new ArrayList<>(), partialList = new ArrayList<>();
+                for (IRegion region : contains) {
+                    if (region.containsBox(a, b, world)) fullList.add(region);
+                    else partialList.add(region);
+                }
+                this.full = fullList.toArray(new IRegion[fullList.size()]);
+                this.partial = partialList.toArray(new IRegion[partialList.size()]);
+                this.version++;
+            }
+        }
+    }
+
+    /**
+     * The regions touching one chunk section, merged from its column and its own height-dependent regions.
+     */
+    public class ChunkData extends Cell {
+
+        private final ColumnData column;
+
+        private IRegion[] full;
+        private IRegion[] partial;
+        private int columnVersion = -1;
+        private final long[] handlerMasks = new long[MAX_HANDLER_SETS];
+        private final IHandler[][] handlerSets = new IHandler[MAX_HANDLER_SETS][];
+        private int handlerSetCount = 0;
+        private int resolvedVersion = -1;
+        private ImmutableSet<IRegion> enabledView;
+        private ImmutableSet<IRegion> allView;
+
+        private ChunkData(ColumnData column, int y) {
+            super(column.world, new Vector3i(column.x, y, column.z));
+            this.column = column;
+            if (column.sections != null) {
+                int bx = column.x << 4, by = y << 4, bz = column.z << 4;
+                indexes.get(world).query(bx, by, bz, bx + 16, by + 16, bz + 16, region -> {
+                    if (!region.isYIndependent() && region.isInChunk(chunk)) add(region);
+                });
+                for (IRegion region : regions) {
+                    if (!region.isYIndependent() && region.isInChunk(chunk, world)) add(region);
+                }
+            }
+        }
+
+        /**
+         * Gets the regions touching this chunk.
+         * The returned set is cached until the chunk changes, so it is shared between callers.
+         *
+         * @param includeDisabled Whether disabled regions should be included.
+         * @return An immutable view of the regions.
+         */
+        public Set<IRegion> getRegions(boolean includeDisabled) {
+            update();
+            if (includeDisabled) {
+                if (allView == null) {
+                    allView = ImmutableSet.<IRegion>builder()
+                            .addAll(column.contains).addAll(contains)
+                            .addAll(column.disabled).addAll(disabled)
+                            .build();
+                }
+                return allView;
+            } else {
+                if (enabledView == null) {
+                    enabledView = ImmutableSet.<IRegion>builder().addAll(column.contains).addAll(contains).build();
+                }
+                return enabledView;
+            }
+        }
+
+        /**
+         * Gets the enabled handlers of every enabled region that contains the given block, sorted by priority.
+         * Only regions that partially cover this chunk are tested against the position.
+         * The returned array is shared between calls and must not be modified.
+         *
+         * @param x The block x coordinate.
+         * @param y The block y coordinate.
+         * @param z The block z coordinate.
+         * @return The resolved handlers.
+         */
+        public IHandler[] getHandlers(int x, int y, int z) {
+            update();
+            IRegion[] partial = this.partial;
+            if (partial.length > Long.SIZE) {
+                List<IRegion> list = new ArrayList<>(Arrays.asList(full));
+                for (IRegion region : partial) {
+                    if (region.contains(x, y, z, world)) list.add(region);
+                }
+                return resolveHandlers(list);
+            }
+            long mask = 0;
+            for (int i = 0; i < partial.length; i++) {
+                if (partial[i].contains(x, y, z, world)) mask |= 1L << i;
+            }
+            return getHandlers(mask);
+        }
+
+        /**
+         * Gets the enabled handlers of every enabled region that contains the given position, sorted by priority.
+         * Only regions that partially cover this chunk are tested against the position.
+         * The returned array is shared between calls and must not be modified.
+         *
+         * @param x The x coordinate.
+         * @param y The y coordinate.
+         * @param z The z coordinate.
+         * @return The resolved handlers.
+         */
+        public IHandler[] getHandlers(double x, double y, double z) {
+            update();
+            IRegion[] partial = this.partial;
+            if (partial.length > Long.SIZE) {
+                List<IRegion> list = new ArrayList<>(Arrays.asList(full));
+                for (IRegion region : partial) {
+                    if (region.contains(x, y, z, world)) list.add(region);
+                }
+                return resolveHandlers(list);
+            }
+            long mask = 0;
+            for (int i = 0; i < partial.length; i++) {
+                if (partial[i].contains(x, y, z, world)) mask |= 1L << i;
+            }
+            return getHandlers(mask);
+        }
+
+        /**
+         * Finds a box around a block in which every block is inside exactly the same enabled regions.
+         * The box never leaves this cell, and keeps a one block margin from the bounds of regions that only partially cover it,
+         * so positions anywhere inside the box resolve to the same regions as the block itself.
+         *
+         * @param x   The block x coordinate.
+         * @param y   The block y coordinate.
+         * @param z   The block z coordinate.
+         * @param box Receives the box as minimum x, y and z followed by maximum x, y and z, all inclusive.
+         * @return Whether a box was found. Regions without usable bounds around the block prevent this.
+         */
+        public boolean getUniformBox(int x, int y, int z, int[] box) {
+            update();
+            int[] pos = {x, y, z};
+            long[] min = {chunk.getX() << 4, chunk.getY() << 4, chunk.getZ() << 4};
+            long[] max = {min[0] + 15, min[1] + 15, min[2] + 15};
+            if (column.flat == this) {
+                min[1] = Integer.MIN_VALUE;
+                max[1] = Integer.MAX_VALUE;
+            }
+            for (IRegion region : partial) {
+                if (!(region instanceof IWorldRegion)) return false;
+                BoundingBox3 bounds = ((IWorldRegion) region).getBounds();
+                long[] lower = {bounds.a.getX(), bounds.a.getY(), bounds.a.getZ()};
+                long[] upper = {bounds.b.getX(), bounds.b.getY(), bounds.b.getZ()};
+                if (region.contains(x, y, z, world)) {
+                    for (int i = 0; i < 3; i++) {
+                        min[i] = Math.max(min[i], lower[i] + 1);
+                        max[i] = Math.min(max[i], upper[i] - 1);
+                    }
+                    if (!isInside(pos, min, max)) return false;
+                    if (!region.containsBox(toVector(min), toVector(max), world)) return false;
+                } else {
+                    int best = -1;
+                    long bestMin = 0, bestMax = 0;
+                    double bestRatio = -1;
+                    boolean overlaps = true;
+                    for (int i = 0; i < 3; i++) {
+                        long newMin = min[i], newMax = max[i];
+                        if (upper[i] + 1 < min[i] || lower[i] - 1 > max[i]) {
+                            overlaps = false;
                             break;
+                        } else if (pos[i] < lower[i] - 1) {
+                            newMax = Math.min(max[i], lower[i] - 2);
+                        } else if (pos[i] > upper[i] + 1) {
+                            newMin = Math.max(min[i], upper[i] + 2);
+                        } else continue;
+                        double ratio = max[i] == min[i] ? 1 : (double) (newMax - newMin) / (max[i] - min[i]);
+                        if (ratio > bestRatio) {
+                            best = i;
+                            bestMin = newMin;
+                            bestMax = newMax;
+                            bestRatio = ratio;
+                        }
                     }
+                    if (!overlaps) continue;
+                    if (best < 0) return false;
+                    min[best] = bestMin;
+                    max[best] = bestMax;
                 }
-                this.dirty.clear();
-                this.isDirty = false;
             }
-            if (includeDisabled) return ImmutableSet.<IRegion>builder().addAll(contains).addAll(disabled).build();
-            else return ImmutableSet.copyOf(contains);
+            for (int i = 0; i < 3; i++) {
+                box[i] = (int) min[i];
+                box[i + 3] = (int) max[i];
+            }
+            return true;
         }
 
-        public void markDirty(IRegion region, DirtyType type) {
-            dirty.put(region, type);
-            isDirty = true;
+        /**
+         * Checks whether an enabled region covers this entire chunk.
+         *
+         * @param region The region to check.
+         * @return Whether the region is known to contain every block of this chunk.
+         */
+        public boolean isFull(IRegion region) {
+            update();
+            for (IRegion r : full) {
+                if (r == region) return true;
+            }
+            return false;
+        }
+
+        private IHandler[] getHandlers(long mask) {
+            if (this.resolvedVersion != handlerVersion) {
+                this.handlerSetCount = 0;
+                this.resolvedVersion = handlerVersion;
+            }
+            for (int i = 0; i < handlerSetCount; i++) {
+                if (handlerMasks[i] == mask) return handlerSets[i];
+            }
+            List<IRegion> list = new ArrayList<>(Arrays.asList(full));
+            for (int i = 0; i < partial.length; i++) {
+                if ((mask & (1L << i)) != 0) list.add(partial[i]);
+            }
+            IHandler[] handlers = resolveHandlers(list);
+            if (handlerSetCount == MAX_HANDLER_SETS) handlerSetCount = 0;
+            handlerMasks[handlerSetCount] = mask;
+            handlerSets[handlerSetCount] = handlers;
+            handlerSetCount++;
+            return handlers;
+        }
+
+        private IHandler[] resolveHandlers(List<IRegion> regions) {
+            List<IHandler> handlerList = new ArrayList<>();
+            for (IRegion region : regions) {
+                for (IHandler handler : region.getHandlers()) {
+                    if (handler.isEnabled() && !handlerList.contains(handler)) handlerList.add(handler);
+                }
+            }
+            Collections.sort(handlerList);
+            return handlerList.toArray(new IHandler[handlerList.size()]);
+        }
+
+        private void update() {
+            column.update();
+            if (applyChanges() || partial == null || columnVersion != column.version) {
+                Vector3i a = chunk.mul(16), b = a.add(15, 15, 15);
+                List<IRegion> fullList = new ArrayList<>(Arrays.asList(column.full));
+                List<IRegion> partialList = new ArrayList<>(Arrays.asList(column.partial));
+                for (IRegion region : contains) {
+                    if (region.containsBox(a, b, world)) fullList.add(region);
+                    else partialList.add(region);
+                }
+                this.full = fullList.toArray(new IRegion[fullList.size()]);
+                this.partial = partialList.toArray(new IRegion[partialList.size()]);
+                this.columnVersion = column.version;
+                this.handlerSetCount = 0;
+                this.enabledView = null;
+                this.allView = null;
+            }
         }
 
     }